@@ -0,0 +1,273 @@
+import android.os.Process;
+import android.util.Log;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Writes {@link L} messages on a background thread. Logging threads publish into a preallocated,
+ * lock-free ring buffer and a single drainer thread writes the buffered messages in batches.
+ * Start it through {@link L#startAsync(int, OverflowPolicy, boolean)}.
+ */
+public final class AsyncLogWriter {
+    // ---------------------------------------------------------------------------------------------
+    // Constants
+    // ---------------------------------------------------------------------------------------------
+    private static final String TAG = L.makeLogTag(AsyncLogWriter.class);
+    private static final String THREAD_NAME = "L-drainer";
+    private static final long FULL_PARK_NANOS = 50000L;
+    private static final long STOP_TIMEOUT_MILLIS = 1000L;
+    /**
+     * How many events are written before their slots are handed back to the producers.
+     */
+    private static final int RELEASE_BATCH = 32;
+
+    /**
+     * What a logging thread does when the ring buffer is full.
+     */
+    public enum OverflowPolicy {
+        /**
+         * Discard the message. The number of dropped messages is reported by the drainer.
+         */
+        DROP,
+        /**
+         * Wait until the drainer frees a slot.
+         */
+        BLOCK
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Fields
+    // ---------------------------------------------------------------------------------------------
+    private final Event[] mEvents;
+    /**
+     * The sequence last published into each slot. A slot is readable when it holds the sequence
+     * the drainer expects next.
+     */
+    private final AtomicLongArray mPublished;
+    private final int mMask;
+    private final OverflowPolicy mPolicy;
+    private final AtomicLong mClaimed = new AtomicLong();
+    private final AtomicLong mDropped = new AtomicLong();
+    private final Object mDrainLock = new Object();
+    /**
+     * The next sequence to be read. Only written while holding {@link #mDrainLock}.
+     */
+    private volatile long mConsumed;
+    private volatile boolean mRunning;
+    /**
+     * Set while the drainer is about to park or parked because the buffer is empty. Producers
+     * only unpark it then, so a busy drainer costs them a single read.
+     */
+    private volatile boolean mWaiting;
+    private volatile Thread mThread;
+
+    // ---------------------------------------------------------------------------------------------
+    // Constructors
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * @param capacity Number of buffered messages. Rounded up to a power of two.
+     * @param policy   What to do when the buffer is full.
+     */
+    public AsyncLogWriter(int capacity, OverflowPolicy policy) {
+        if (capacity < 1 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("capacity must be between 1 and 2^30: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        mEvents = new Event[size];
+        mPublished = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            mEvents[i] = new Event();
+            mPublished.set(i, -1L);
+        }
+        mMask = size - 1;
+        mPolicy = policy;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Public methods
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Starts the drainer thread.
+     */
+    public synchronized void start() {
+        if (mRunning) {
+            return;
+        }
+        mRunning = true;
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                while (mRunning) {
+                    if (drain() == 0) {
+                        mWaiting = true;
+                        // A producer that published before seeing the flag didn't unpark
+                        if (mRunning && isEmpty()) {
+                            LockSupport.park(this);
+                        }
+                        mWaiting = false;
+                    }
+                }
+                drain();
+            }
+        }, THREAD_NAME);
+        thread.setDaemon(true);
+        mThread = thread;
+        thread.start();
+    }
+
+    /**
+     * Stops the drainer thread after writing everything that is buffered. Messages logged after
+     * this are written on the calling thread. A logging thread that raced with stop() writes its
+     * message itself.
+     */
+    public synchronized void stop() {
+        if (!mRunning) {
+            return;
+        }
+        mRunning = false;
+        Thread thread = mThread;
+        LockSupport.unpark(thread);
+        if (thread != Thread.currentThread()) {
+            try {
+                thread.join(STOP_TIMEOUT_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread()
+                    .interrupt();
+            }
+        }
+        drain();
+    }
+
+    /**
+     * Writes everything that is buffered on the calling thread. Safe to call while the drainer is
+     * running, e.g. from a crash handler.
+     */
+    public void flush() {
+        drain();
+    }
+
+    /**
+     * @return Number of messages dropped since the last drop report.
+     */
+    public long getDroppedCount() {
+        return mDropped.get();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Package methods
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Publishes a message without taking a lock.
+     *
+     * @return false if the writer is not running and the caller should write the message itself.
+     */
+    boolean publish(long timeMillis, int priority, String tag, StackTraceElement caller,
+        String msg, Throwable tr) {
+        long sequence;
+        while (true) {
+            if (!mRunning || Thread.currentThread() == mThread) {
+                return false;
+            }
+            sequence = mClaimed.get();
+            if (sequence - mConsumed >= mEvents.length) {
+                if (mPolicy == OverflowPolicy.DROP) {
+                    mDropped.incrementAndGet();
+                    return true;
+                }
+                LockSupport.unpark(mThread);
+                LockSupport.parkNanos(this, FULL_PARK_NANOS);
+                continue;
+            }
+            if (mClaimed.compareAndSet(sequence, sequence + 1)) {
+                break;
+            }
+        }
+        int index = (int) sequence & mMask;
+        mEvents[index].set(timeMillis, priority, tag, caller, msg, tr);
+        // A volatile write, so it can't be reordered with the read of mWaiting below
+        mPublished.set(index, sequence);
+        if (mWaiting) {
+            LockSupport.unpark(mThread);
+        }
+        if (!mRunning) {
+            // stop() may have run its final drain before the event was published
+            drain();
+        }
+        return true;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Private methods
+    // ---------------------------------------------------------------------------------------------
+    private boolean isEmpty() {
+        long next = mConsumed;
+        return mPublished.get((int) next & mMask) != next;
+    }
+
+    private int drain() {
+        synchronized (mDrainLock) {
+            long next = mConsumed;
+            int count = 0;
+            while (mPublished.get((int) next & mMask) == next) {
+                Event event = mEvents[(int) next & mMask];
+                try {
+                    L.write(event.mTimeMillis, event.mPriority, event.mTag, event.mCaller,
+                        event.mMsg, event.mTr);
+                } catch (RuntimeException e) {
+                    // A failing message must not stall the buffer
+                }
+                event.clear();
+                next++;
+                if (++count % RELEASE_BATCH == 0) {
+                    mConsumed = next;
+                }
+            }
+            mConsumed = next;
+
+            long dropped = mDropped.getAndSet(0);
+            if (dropped > 0) {
+                L.write(System.currentTimeMillis(), Log.WARN, TAG, null,
+                    dropped + " log messages dropped", null);
+            }
+            return count;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Inner classes
+    // ---------------------------------------------------------------------------------------------
+    private static final class Event {
+        private long mTimeMillis;
+        private int mPriority;
+        private String mTag;
+        private StackTraceElement mCaller;
+        private String mMsg;
+        private Throwable mTr;
+
+        private void set(long timeMillis, int priority, String tag, StackTraceElement caller,
+            String msg, Throwable tr) {
+            mTimeMillis = timeMillis;
+            mPriority = priority;
+            mTag = tag;
+            mCaller = caller;
+            mMsg = msg;
+            mTr = tr;
+        }
+
+        private void clear() {
+            mTag = null;
+            mCaller = null;
+            mMsg = null;
+            mTr = null;
+        }
+    }
+}
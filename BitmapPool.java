@@ -0,0 +1,206 @@
+package com.night_bg.utils;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.os.Build;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps released bitmaps in buckets by width, height and config, so the next bitmap of the same
+ * shape is erased and reused instead of allocated. The pool holds at most a fixed number of
+ * bytes and evicts the least recently used bucket first. All methods are thread safe.
+ */
+public class BitmapPool {
+    // ---------------------------------------------------------------------------------------------
+    // Fields
+    // ---------------------------------------------------------------------------------------------
+    /**
+     * Buckets in access order, so the first one is the least recently used.
+     */
+    private final LinkedHashMap<Long, ArrayDeque<Bitmap>> buckets =
+        new LinkedHashMap<>(16, 0.75f, true);
+    private int maxBytes;
+    private int size;
+    private long reuseCount;
+    private long missCount;
+
+    // ---------------------------------------------------------------------------------------------
+    // Constructors
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * @param maxBytes Maximum bytes of all pooled bitmaps.
+     */
+    public BitmapPool(int maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Public methods
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Takes a pooled bitmap of the given shape and erases it, or allocates a new one.
+     *
+     * @param width  Width in pixels.
+     * @param height Height in pixels.
+     * @param config Bitmap config.
+     * @return A transparent mutable bitmap owned by the caller.
+     */
+    public Bitmap get(int width, int height, Bitmap.Config config) {
+        Bitmap bitmap = null;
+        synchronized (this) {
+            Long key = key(width, height, config);
+            ArrayDeque<Bitmap> bucket = buckets.get(key);
+            if (bucket != null) {
+                bitmap = bucket.pollLast();
+                if (bucket.isEmpty()) {
+                    buckets.remove(key);
+                }
+            }
+            if (bitmap != null) {
+                size -= getByteCount(bitmap);
+                reuseCount++;
+            } else {
+                missCount++;
+            }
+        }
+        if (bitmap == null) {
+            return Bitmap.createBitmap(width, height, config);
+        }
+        bitmap.eraseColor(Color.TRANSPARENT);
+        return bitmap;
+    }
+
+    /**
+     * Hands a bitmap back to the pool. The caller must not use it anymore. Immutable, recycled and
+     * hardware bitmaps are ignored, and bitmaps larger than the whole budget are recycled.
+     *
+     * @param bitmap Bitmap owned by the caller.
+     */
+    public void release(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable() ||
+            bitmap.getConfig() == null) {
+            return;
+        }
+        int bytes = getByteCount(bitmap);
+        synchronized (this) {
+            if (bytes <= maxBytes) {
+                Long key = key(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+                ArrayDeque<Bitmap> bucket = buckets.get(key);
+                if (bucket == null) {
+                    bucket = new ArrayDeque<>();
+                    buckets.put(key, bucket);
+                }
+                bucket.addLast(bitmap);
+                size += bytes;
+                trimToSize(maxBytes);
+                return;
+            }
+        }
+        bitmap.recycle();
+    }
+
+    /**
+     * @param maxBytes Maximum bytes of all pooled bitmaps.
+     */
+    public synchronized void setMaxSize(int maxBytes) {
+        this.maxBytes = maxBytes;
+        trimToSize(maxBytes);
+    }
+
+    /**
+     * Recycles pooled bitmaps, least recently used first, until the pool fits.
+     *
+     * @param maxBytes Bytes the pool may keep.
+     */
+    public synchronized void trimToSize(int maxBytes) {
+        Iterator<Map.Entry<Long, ArrayDeque<Bitmap>>> iterator = buckets.entrySet()
+            .iterator();
+        while (size > maxBytes && iterator.hasNext()) {
+            ArrayDeque<Bitmap> bucket = iterator.next()
+                .getValue();
+            while (size > maxBytes && !bucket.isEmpty()) {
+                Bitmap bitmap = bucket.pollFirst();
+                size -= getByteCount(bitmap);
+                bitmap.recycle();
+            }
+            if (bucket.isEmpty()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Releases pooled bitmaps depending on how much memory the system needs back.
+     *
+     * @param level Level passed to onTrimMemory.
+     */
+    public synchronized void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            trimToSize(0);
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND ||
+            level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW &&
+                level < ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            trimToSize(maxBytes / 2);
+        }
+    }
+
+    /**
+     * Recycles all pooled bitmaps.
+     */
+    public void clear() {
+        trimToSize(0);
+    }
+
+    /**
+     * @return Bytes currently held by the pool.
+     */
+    public synchronized int getSize() {
+        return size;
+    }
+
+    /**
+     * @return Number of {@link #get} calls served with a pooled bitmap.
+     */
+    public synchronized long getReuseCount() {
+        return reuseCount;
+    }
+
+    /**
+     * @return Number of {@link #get} calls that had to allocate.
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @return Share of {@link #get} calls served with a pooled bitmap, between 0 and 1.
+     */
+    public synchronized double getReuseRatio() {
+        long total = reuseCount + missCount;
+        return total == 0 ? 0 : (double) reuseCount / total;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Package methods
+    // ---------------------------------------------------------------------------------------------
+    static int getByteCount(Bitmap bitmap) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            return bitmap.getAllocationByteCount();
+        }
+        return bitmap.getByteCount();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Private methods
+    // ---------------------------------------------------------------------------------------------
+    private static Long key(int width, int height, Bitmap.Config config) {
+        return ((long) width << 32) | ((long) height << 8) | config.ordinal();
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.mypermissionsapp;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.view.Choreographer;
+
+/**
+ * Frame source driven by {@link Choreographer} vsync timestamps. Frame durations are the time
+ * between two consecutive vsyncs in nanoseconds, so a 16.6 ms frame is not rounded to 16 or 17.
+ */
+@TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+class ChoreographerFrameSource implements FrameSource, Choreographer.FrameCallback {
+    // ---------------------------------------------------------------------------------------------
+    // Fields
+    // ---------------------------------------------------------------------------------------------
+    private Callback mCallback;
+    private long mLastFrameTimeNanos;
+
+    // ---------------------------------------------------------------------------------------------
+    // Public methods
+    // ---------------------------------------------------------------------------------------------
+    @Override
+    public void start(Callback callback) {
+        if (mCallback != null) {
+            return;
+        }
+        mCallback = callback;
+        mLastFrameTimeNanos = 0;
+        Choreographer.getInstance()
+            .postFrameCallback(this);
+    }
+
+    @Override
+    public void stop() {
+        if (mCallback == null) {
+            return;
+        }
+        mCallback = null;
+        Choreographer.getInstance()
+            .removeFrameCallback(this);
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        Callback callback = mCallback;
+        if (callback == null) {
+            return;
+        }
+        Choreographer.getInstance()
+            .postFrameCallback(this);
+        if (mLastFrameTimeNanos != 0) {
+            callback.onFrame(frameTimeNanos, frameTimeNanos - mLastFrameTimeNanos);
+        }
+        mLastFrameTimeNanos = frameTimeNanos;
+    }
+}
@@ -0,0 +1,113 @@
+import android.content.res.Configuration;
+
+/**
+ * Immutable description of the screen, created by
+ * {@link DisplayUtils#getSnapshot(android.app.Activity)}. All getters are plain field reads, so
+ * they are safe to call from layout and draw code.
+ */
+public final class DisplaySnapshot {
+    // ---------------------------------------------------------------------------------------------
+    // Fields
+    // ---------------------------------------------------------------------------------------------
+    private final int width;
+    private final int height;
+    private final float xdpi;
+    private final float ydpi;
+    private final float density;
+    private final int densityDpi;
+    private final float scaledDensity;
+    private final double screenInches;
+    private final int sizeClass;
+    private final String sizeName;
+    private final boolean tablet;
+
+    // ---------------------------------------------------------------------------------------------
+    // Constructors
+    // ---------------------------------------------------------------------------------------------
+    DisplaySnapshot(int width, int height, float xdpi, float ydpi, float density, int densityDpi,
+        float scaledDensity, double screenInches, int sizeClass, String sizeName,
+        boolean tablet) {
+        this.width = width;
+        this.height = height;
+        this.xdpi = xdpi;
+        this.ydpi = ydpi;
+        this.density = density;
+        this.densityDpi = densityDpi;
+        this.scaledDensity = scaledDensity;
+        this.screenInches = screenInches;
+        this.sizeClass = sizeClass;
+        this.sizeName = sizeName;
+        this.tablet = tablet;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Public methods
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * @return Real screen width in pixels, including system decorations.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return Real screen height in pixels, including system decorations.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    public float getXdpi() {
+        return xdpi;
+    }
+
+    public float getYdpi() {
+        return ydpi;
+    }
+
+    public float getDensity() {
+        return density;
+    }
+
+    public int getDensityDpi() {
+        return densityDpi;
+    }
+
+    public float getScaledDensity() {
+        return scaledDensity;
+    }
+
+    /**
+     * @return Screen diagonal in inches, rounded to one decimal.
+     */
+    public double getScreenInches() {
+        return screenInches;
+    }
+
+    /**
+     * @return One of the {@link Configuration}.SCREENLAYOUT_SIZE_* constants.
+     */
+    public int getSizeClass() {
+        return sizeClass;
+    }
+
+    /**
+     * @return One of screen names "small", "normal", "large", "xlarge", or "undefined".
+     */
+    public String getSizeName() {
+        return sizeName;
+    }
+
+    public boolean isTablet() {
+        return tablet;
+    }
+
+    @Override
+    public String toString() {
+        return "DisplaySnapshot{width=" + width + ", height=" + height + ", xdpi=" + xdpi +
+            ", ydpi=" + ydpi + ", density=" + density + ", densityDpi=" + densityDpi +
+            ", scaledDensity=" + scaledDensity + ", screenInches=" + screenInches +
+            ", sizeName=" + sizeName + ", tablet=" + tablet + "}";
+    }
+}
@@ -1,15 +1,20 @@
-
+import android.annotation.TargetApi;
 import android.app.Activity;
+import android.content.ComponentCallbacks;
 import android.content.Context;
 import android.content.res.Configuration;
+import android.hardware.display.DisplayManager;
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.DisplayMetrics;
 import android.util.Log;
 import android.view.Display;
 import android.view.ViewConfiguration;
 
-import java.text.DecimalFormat;
-import java.text.NumberFormat;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Created by @Stanimir Spasov.
@@ -19,22 +24,29 @@ public class DisplayUtils {
     // Constants
     // ---------------------------------------------------------------------------------------------
     private static final String TAG = DisplayUtils.class.getSimpleName();
-    private static final String INCH_FORMAT = "#0.0";
+    private static final double TABLET_MIN_INCHES = 7.0;
+    // Same thresholds the framework uses for Configuration.screenLayout, in dp
+    private static final int XLARGE_LONG_DP = 960;
+    private static final int XLARGE_SHORT_DP = 720;
+    private static final int LARGE_LONG_DP = 640;
+    private static final int LARGE_SHORT_DP = 480;
+    private static final int NORMAL_LONG_DP = 470;
+    private static final int NORMAL_SHORT_DP = 320;
 
     // ---------------------------------------------------------------------------------------------
     // Fields
     // ---------------------------------------------------------------------------------------------
-    private static DisplayMetrics displayMetrics;
-
-    private static int width;
-    private static int height;
-    private static float xdpi;
-    private static float ydpi;
-    private static double screenInches;
-
-    private static float density;
-    private static int densityDpi;
-    private static float scaledDensity;
+    private static volatile DisplaySnapshot snapshot;
+    private static volatile DisplaySnapshot defaultDisplaySnapshot;
+    private static boolean callbacksRegistered;
+    private static final ConcurrentHashMap<Integer, DisplaySnapshot> displaySnapshots =
+        new ConcurrentHashMap<>();
+    /**
+     * Bumped for a display whenever its snapshot is dropped, guarded by itself. A snapshot is only
+     * cached if the generation of its display didn't change while it was created.
+     */
+    private static final Map<Integer, Integer> displayGenerations = new HashMap<>();
+    private static DisplayManager displayManager;
 
     // ---------------------------------------------------------------------------------------------
     // Public methods
@@ -49,45 +61,87 @@ public class DisplayUtils {
      * @return Calculated screen inches.
      */
     public static double getScreenInches(Activity activity) {
-        displayMetrics = new DisplayMetrics();
-        Display display = activity.getWindowManager()
-            .getDefaultDisplay();
+        return getSnapshot(activity).getScreenInches();
+    }
 
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
-            display.getRealMetrics(displayMetrics);
-            height = displayMetrics.heightPixels;
-        } else {
-            display.getMetrics(displayMetrics);
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
-                if (ViewConfiguration.get(activity)
-                    .hasPermanentMenuKey()) {
-                    height = displayMetrics.heightPixels;
-                } else {
-                    height = displayMetrics.heightPixels + getNavigationBarHeight(activity);
-                }
-            } else {
-                height = displayMetrics.heightPixels;
-            }
+    /**
+     * Method that returns a cached description of the screen. It is computed on the first call
+     * and again after a configuration change, every other call is a single field read.
+     *
+     * @param activity The activity witch will call this method. If it is from activity pass "this".
+     *                 If it is from fragment - "getActivity()".
+     * @return Screen size, density, inches, size class and tablet flag.
+     */
+    public static DisplaySnapshot getSnapshot(Activity activity) {
+        DisplaySnapshot current = snapshot;
+        if (current == null) {
+            registerCallbacks(activity);
+            current = createSnapshot(activity);
+            snapshot = current;
+            Log.i(TAG, "snapshot = " + current);
         }
+        return current;
+    }
 
-        width = displayMetrics.widthPixels;
-        xdpi = displayMetrics.xdpi;
-        ydpi = displayMetrics.ydpi;
-
-        density = displayMetrics.density;
-        densityDpi = displayMetrics.densityDpi;
-        scaledDensity = displayMetrics.scaledDensity;
-
-        double x = Math.pow(width / xdpi, 2);
-        double y = Math.pow(height / ydpi, 2);
-        screenInches = Math.sqrt(x + y);
-
-        NumberFormat formatter = new DecimalFormat(INCH_FORMAT);
-        screenInches = Double.valueOf(formatter.format(screenInches));
+    /**
+     * Method that returns a cached description of any display, e.g. the inner and outer screen of
+     * a foldable or a presentation display. A display listener recomputes only the display that
+     * changed, so queries never go through the WindowManager.
+     * The size class is derived from the display size in dp, as the framework would for a
+     * full screen window on that display.
+     *
+     * @param context   Any context. Only the application context is kept.
+     * @param displayId The id of the display, e.g. {@link Display#DEFAULT_DISPLAY}.
+     * @return Cached display description or null if there is no such display.
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR1)
+    public static DisplaySnapshot getSnapshot(Context context, int displayId) {
+        DisplaySnapshot current = displaySnapshots.get(displayId);
+        if (current == null) {
+            Display display = registerDisplayListener(context).getDisplay(displayId);
+            if (display == null) {
+                return null;
+            }
+            current = cacheSnapshot(context, display);
+        }
+        return current;
+    }
 
-        log();
+    /**
+     * @param context Any context. Only the application context is kept.
+     * @param display The display to describe.
+     * @return Cached display description.
+     * @see #getSnapshot(Context, int)
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR1)
+    public static DisplaySnapshot getSnapshot(Context context, Display display) {
+        DisplaySnapshot current = getSnapshot(context, display.getDisplayId());
+        return current != null ? current : createSnapshot(context, display);
+    }
 
-        return screenInches;
+    /**
+     * Method that returns a cached description of the default display for code that has no
+     * activity, e.g. {@link UnitConverter}. A new snapshot is returned after the display or the
+     * configuration changed.
+     *
+     * @param context Any context. Only the application context is kept.
+     * @return Cached description of the default display.
+     */
+    public static DisplaySnapshot getDefaultDisplaySnapshot(Context context) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+            return getSnapshot(context, Display.DEFAULT_DISPLAY);
+        }
+        DisplaySnapshot current = defaultDisplaySnapshot;
+        if (current == null) {
+            registerCallbacks(context);
+            DisplayMetrics displayMetrics = context.getApplicationContext()
+                .getResources()
+                .getDisplayMetrics();
+            current = createSnapshot(displayMetrics, displayMetrics.widthPixels,
+                displayMetrics.heightPixels, getSizeClass(context), getFontScale(context));
+            defaultDisplaySnapshot = current;
+        }
+        return current;
     }
 
     /**
@@ -98,15 +152,7 @@ public class DisplayUtils {
      * @return Calculated status bar height in pixels.
      */
     public static int getStatusBarHeight(Context context) {
-        int result = 0;
-        int resourceId = context.getResources()
-            .getIdentifier("status_bar_height", "dimen", "android");
-        if (resourceId > 0) {
-            result = context.getResources()
-                .getDimensionPixelSize(resourceId);
-        }
-        Log.i(TAG, "statusBarHeight = " + result);
-        return result;
+        return SystemDimens.get(context, SystemDimens.STATUS_BAR_HEIGHT);
     }
 
     /**
@@ -117,15 +163,31 @@ public class DisplayUtils {
      * @return Calculated navigation bar height in pixels.
      */
     public static int getNavigationBarHeight(Context context) {
-        int result = 0;
-        int resourceId = context.getResources()
-            .getIdentifier("navigation_bar_height", "dimen", "android");
-        if (resourceId > 0) {
-            result = context.getResources()
-                .getDimensionPixelSize(resourceId);
-        }
-        Log.i(TAG, "navigationBarHeight = " + result);
-        return result;
+        return SystemDimens.get(context, SystemDimens.NAVIGATION_BAR_HEIGHT);
+    }
+
+    /**
+     * Method that converts dp to pixels through a precomputed table.
+     *
+     * @param context Any context.
+     * @param dp      Value in dp.
+     * @return Value in pixels.
+     * @see UnitConverter
+     */
+    public static int dpToPx(Context context, int dp) {
+        return UnitConverter.dpToPx(context, dp);
+    }
+
+    /**
+     * Method that converts sp to pixels through a precomputed table.
+     *
+     * @param context Any context.
+     * @param sp      Value in sp.
+     * @return Value in pixels, including the user's font scale.
+     * @see UnitConverter
+     */
+    public static int spToPx(Context context, int sp) {
+        return UnitConverter.spToPx(context, sp);
     }
 
     /**
@@ -136,26 +198,7 @@ public class DisplayUtils {
      * @return One of screen names "small", "normal", "large", "xlarge", or ""undefined".
      */
     public static String getScreenSizeName(Context context) {
-        int screenLayout = context.getResources()
-            .getConfiguration().screenLayout;
-        screenLayout &= Configuration.SCREENLAYOUT_SIZE_MASK;
-        String sizeName;
-        switch (screenLayout) {
-            case Configuration.SCREENLAYOUT_SIZE_SMALL:
-                sizeName = "small";
-                break;
-            case Configuration.SCREENLAYOUT_SIZE_NORMAL:
-                sizeName = "normal";
-                break;
-            case Configuration.SCREENLAYOUT_SIZE_LARGE:
-                sizeName = "large";
-                break;
-            case Configuration.SCREENLAYOUT_SIZE_XLARGE:
-                sizeName = "xlarge";
-                break;
-            default:
-                sizeName = "undefined";
-        }
+        String sizeName = getSizeName(getSizeClass(context));
         Log.i(TAG, "screenSizeName = " + sizeName);
         return sizeName;
     }
@@ -168,11 +211,7 @@ public class DisplayUtils {
      * @return Screen density in dpi.
      */
     public static int getScreenDensityDpi(Activity activity) {
-        displayMetrics = new DisplayMetrics();
-        activity.getWindowManager()
-            .getDefaultDisplay()
-            .getMetrics(displayMetrics);
-        densityDpi = displayMetrics.densityDpi;
+        int densityDpi = getSnapshot(activity).getDensityDpi();
 
         switch (densityDpi) {
             case DisplayMetrics.DENSITY_LOW:
@@ -208,22 +247,210 @@ public class DisplayUtils {
      * @return true or false.
      */
     public static boolean isDeviceTablet(Activity activity) {
-        return (getScreenSizeName(activity).contains("large") ||
-                getScreenSizeName(activity).contains("xlarge")) && getScreenInches(activity) >= 7.0;
+        return getSnapshot(activity).isTablet();
     }
 
     // ---------------------------------------------------------------------------------------------
     // Private methods
     // ---------------------------------------------------------------------------------------------
-    private static void log() {
-        Log.i(TAG, "screenWidth = " + width);
-        Log.i(TAG, "screenXdpi = " + xdpi);
-        Log.i(TAG, "screenHeight = " + height);
-        Log.i(TAG, "screenYdpi = " + ydpi);
-        Log.i(TAG, "density = " + density);
-        Log.i(TAG, "densityDpi = " + densityDpi);
-        Log.i(TAG, "scaledDensity = " + scaledDensity);
-
-        Log.i(TAG, "screenInches = " + screenInches);
+    private static synchronized void registerCallbacks(Context context) {
+        if (callbacksRegistered) {
+            return;
+        }
+        callbacksRegistered = true;
+        context.getApplicationContext()
+            .registerComponentCallbacks(new ComponentCallbacks() {
+                @Override
+                public void onConfigurationChanged(Configuration newConfig) {
+                    snapshot = null;
+                    defaultDisplaySnapshot = null;
+                    // The font scale is part of every display snapshot
+                    invalidateAll();
+                }
+
+                @Override
+                public void onLowMemory() {
+                }
+            });
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR1)
+    private static synchronized DisplayManager registerDisplayListener(Context context) {
+        if (displayManager != null) {
+            return displayManager;
+        }
+        registerCallbacks(context);
+        final Context appContext = context.getApplicationContext();
+        displayManager = (DisplayManager) appContext.getSystemService(Context.DISPLAY_SERVICE);
+        displayManager.registerDisplayListener(new DisplayManager.DisplayListener() {
+            @Override
+            public void onDisplayAdded(int displayId) {
+                // Computed on first query
+            }
+
+            @Override
+            public void onDisplayRemoved(int displayId) {
+                invalidate(displayId);
+            }
+
+            @Override
+            public void onDisplayChanged(int displayId) {
+                if (displayId == Display.DEFAULT_DISPLAY) {
+                    snapshot = null;
+                }
+                if (invalidate(displayId)) {
+                    Display display = displayManager.getDisplay(displayId);
+                    if (display != null) {
+                        cacheSnapshot(appContext, display);
+                    }
+                }
+            }
+        }, new Handler(Looper.getMainLooper()));
+        return displayManager;
+    }
+
+    /**
+     * Creates a snapshot and caches it, unless the display changed in the meantime. Then the
+     * snapshot may describe the old state, so it is only returned.
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR1)
+    private static DisplaySnapshot cacheSnapshot(Context context, Display display) {
+        int displayId = display.getDisplayId();
+        int generation = getGeneration(displayId);
+        DisplaySnapshot current = createSnapshot(context, display);
+        synchronized (displayGenerations) {
+            if (generation != getGeneration(displayId)) {
+                return current;
+            }
+            DisplaySnapshot existing = displaySnapshots.putIfAbsent(displayId, current);
+            if (existing != null) {
+                return existing;
+            }
+        }
+        Log.i(TAG, "display " + displayId + " snapshot = " + current);
+        return current;
+    }
+
+    private static int getGeneration(int displayId) {
+        synchronized (displayGenerations) {
+            Integer generation = displayGenerations.get(displayId);
+            if (generation == null) {
+                // Registered, so invalidateAll() also reaches snapshots still being created
+                generation = 0;
+                displayGenerations.put(displayId, generation);
+            }
+            return generation;
+        }
+    }
+
+    /**
+     * @return Whether a snapshot of the display was cached.
+     */
+    private static boolean invalidate(int displayId) {
+        synchronized (displayGenerations) {
+            displayGenerations.put(displayId, getGeneration(displayId) + 1);
+            return displaySnapshots.remove(displayId) != null;
+        }
+    }
+
+    private static void invalidateAll() {
+        synchronized (displayGenerations) {
+            for (Map.Entry<Integer, Integer> entry : displayGenerations.entrySet()) {
+                entry.setValue(entry.getValue() + 1);
+            }
+            displaySnapshots.clear();
+        }
+    }
+
+    private static DisplaySnapshot createSnapshot(Activity activity) {
+        DisplayMetrics displayMetrics = new DisplayMetrics();
+        Display display = activity.getWindowManager()
+            .getDefaultDisplay();
+
+        int height;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+            display.getRealMetrics(displayMetrics);
+            height = displayMetrics.heightPixels;
+        } else {
+            display.getMetrics(displayMetrics);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
+                if (ViewConfiguration.get(activity)
+                    .hasPermanentMenuKey()) {
+                    height = displayMetrics.heightPixels;
+                } else {
+                    height = displayMetrics.heightPixels + getNavigationBarHeight(activity);
+                }
+            } else {
+                height = displayMetrics.heightPixels;
+            }
+        }
+        return createSnapshot(displayMetrics, displayMetrics.widthPixels, height,
+            getSizeClass(activity), getFontScale(activity));
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR1)
+    private static DisplaySnapshot createSnapshot(Context context, Display display) {
+        DisplayMetrics displayMetrics = new DisplayMetrics();
+        display.getRealMetrics(displayMetrics);
+        int width = displayMetrics.widthPixels;
+        int height = displayMetrics.heightPixels;
+
+        int longDp = (int) (Math.max(width, height) / displayMetrics.density);
+        int shortDp = (int) (Math.min(width, height) / displayMetrics.density);
+        int sizeClass;
+        if (longDp >= XLARGE_LONG_DP && shortDp >= XLARGE_SHORT_DP) {
+            sizeClass = Configuration.SCREENLAYOUT_SIZE_XLARGE;
+        } else if (longDp >= LARGE_LONG_DP && shortDp >= LARGE_SHORT_DP) {
+            sizeClass = Configuration.SCREENLAYOUT_SIZE_LARGE;
+        } else if (longDp >= NORMAL_LONG_DP && shortDp >= NORMAL_SHORT_DP) {
+            sizeClass = Configuration.SCREENLAYOUT_SIZE_NORMAL;
+        } else {
+            sizeClass = Configuration.SCREENLAYOUT_SIZE_SMALL;
+        }
+        return createSnapshot(displayMetrics, width, height, sizeClass, getFontScale(context));
+    }
+
+    /**
+     * @param fontScale Applied to the density for scaledDensity. Metrics read from a
+     *                  {@link Display} don't include it.
+     */
+    private static DisplaySnapshot createSnapshot(DisplayMetrics displayMetrics, int width,
+        int height, int sizeClass, float fontScale) {
+        double x = Math.pow(width / displayMetrics.xdpi, 2);
+        double y = Math.pow(height / displayMetrics.ydpi, 2);
+        double screenInches = Math.round(Math.sqrt(x + y) * 10) / 10.0;
+
+        boolean tablet = (sizeClass == Configuration.SCREENLAYOUT_SIZE_LARGE ||
+            sizeClass == Configuration.SCREENLAYOUT_SIZE_XLARGE) &&
+            screenInches >= TABLET_MIN_INCHES;
+
+        return new DisplaySnapshot(width, height, displayMetrics.xdpi, displayMetrics.ydpi,
+            displayMetrics.density, displayMetrics.densityDpi, displayMetrics.density * fontScale,
+            screenInches, sizeClass, getSizeName(sizeClass), tablet);
+    }
+
+    private static int getSizeClass(Context context) {
+        return context.getResources()
+            .getConfiguration().screenLayout & Configuration.SCREENLAYOUT_SIZE_MASK;
+    }
+
+    private static float getFontScale(Context context) {
+        return context.getResources()
+            .getConfiguration().fontScale;
+    }
+
+    private static String getSizeName(int sizeClass) {
+        switch (sizeClass) {
+            case Configuration.SCREENLAYOUT_SIZE_SMALL:
+                return "small";
+            case Configuration.SCREENLAYOUT_SIZE_NORMAL:
+                return "normal";
+            case Configuration.SCREENLAYOUT_SIZE_LARGE:
+                return "large";
+            case Configuration.SCREENLAYOUT_SIZE_XLARGE:
+                return "xlarge";
+            default:
+                return "undefined";
+        }
     }
 }
@@ -2,7 +2,6 @@ package com.example.mypermissionsapp;
 
 import android.content.Context;
 import android.content.Intent;
-import android.content.res.Resources;
 import android.os.Bundle;
 import android.support.v7.app.AppCompatActivity;
 import android.util.TypedValue;
@@ -57,6 +56,7 @@ public class FilePickerActivity extends AppCompatActivity
     protected FilePickerListAdapter mAdapter;
     protected boolean mShowHiddenFiles = false;
     protected String[] acceptedFileExtensions;
+    private float mDensity;
 
     // ---------------------------------------------------------------------------------------------
     // New intent
@@ -78,6 +78,8 @@ public class FilePickerActivity extends AppCompatActivity
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        // Read once, every list row converts its dimensions with it
+        mDensity = getResources().getDisplayMetrics().density;
 
         getSupportActionBar().setDisplayHomeAsUpEnabled(true);
         getSupportActionBar().setDisplayShowHomeEnabled(true);
@@ -309,8 +311,7 @@ public class FilePickerActivity extends AppCompatActivity
         }
 
         private int dpToPx(int dp) {
-            return (int) (dp * Resources.getSystem()
-                .getDisplayMetrics().density);
+            return (int) (dp * mDensity);
         }
     }
 
@@ -6,19 +6,56 @@ import android.annotation.TargetApi;
 import android.os.Build;
 import android.widget.TextView;
 
+/**
+ * Shows a smoothed FPS value. Frames come either from a {@link TimeAnimator}, with millisecond
+ * resolution, or from any {@link FrameSource} with nanosecond resolution. Both deliver on the main
+ * thread, where the TextView is updated. Prefer the shared clock:
+ * "FrameSampler.getInstance().subscribe(new FpsTimeListener(textView))".
+ */
 @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
-class FpsTimeListener implements TimeListener {
+class FpsTimeListener implements TimeListener, FrameSource.Callback {
+    // ---------------------------------------------------------------------------------------------
+    // Constants
+    // ---------------------------------------------------------------------------------------------
+    private static final double NANOS_PER_SECOND = 1000000000.0;
+    private static final long NANOS_PER_MILLI = 1000000L;
+    private static final String PREFIX = "FPS: ";
+    /**
+     * Digits before the decimal point. The overlay text always has the same length, so a
+     * wrap_content TextView doesn't change its size.
+     */
+    private static final int INTEGER_DIGITS = 3;
+    private static final int MAX_HUNDREDTHS = 99999;
+
     // ---------------------------------------------------------------------------------------------
     // Fields
     // ---------------------------------------------------------------------------------------------
     private double mFps;
     private TextView mTextView;
+    private FrameTimeRecorder mRecorder;
+    private FrameTimelineRecorder mTimelineRecorder;
+
+    private boolean mOverlayMode;
+    private long mUpdateIntervalNanos;
+    private long mSinceUpdateNanos;
+    private int mDisplayedHundredths = -1;
+    private char[] mText;
 
     // ---------------------------------------------------------------------------------------------
     // Constructors
     // ---------------------------------------------------------------------------------------------
     public FpsTimeListener(TextView textView) {
+        this(textView, null);
+    }
+
+    /**
+     * @param textView Shows the smoothed FPS.
+     * @param recorder Receives every frame time, so stutters show up in its percentiles and jank
+     *                 counts. May be null.
+     */
+    public FpsTimeListener(TextView textView, FrameTimeRecorder recorder) {
         this.mTextView = textView;
+        this.mRecorder = recorder;
         this.mFps = -1.0;
     }
 
@@ -27,18 +64,100 @@ class FpsTimeListener implements TimeListener {
     // ---------------------------------------------------------------------------------------------
     @Override
     public void onTimeUpdate(TimeAnimator animation, long totalTime, long deltaTime) {
+        onFrame(System.nanoTime(), deltaTime * NANOS_PER_MILLI);
+    }
 
-        double currentFps;
-        if (deltaTime != 0) {
-            currentFps = 1000.0 / (double) deltaTime;
-        } else {
-            currentFps = 0.9 * mFps;
+    @Override
+    public void onFrame(long frameTimeNanos, long frameDurationNanos) {
+        if (frameDurationNanos <= 0) {
+            // The first TimeAnimator tick has no duration
+            return;
+        }
+        if (mRecorder != null) {
+            mRecorder.recordFrame(frameDurationNanos);
+        }
+        if (mTimelineRecorder != null) {
+            mTimelineRecorder.onFrame(frameTimeNanos, frameDurationNanos);
+        }
+        onFrameDuration(frameDurationNanos);
+    }
+
+    public FrameTimeRecorder getRecorder() {
+        return mRecorder;
+    }
+
+    /**
+     * @param timelineRecorder Receives the start and duration of every frame, so the recent
+     *                         frames can be exported as a trace. May be null.
+     */
+    public void setTimelineRecorder(FrameTimelineRecorder timelineRecorder) {
+        mTimelineRecorder = timelineRecorder;
+    }
+
+    /**
+     * Switches to overlay mode, meant for an always visible FPS meter. The text is formatted into
+     * a reused char array without allocating, and the TextView is only updated at the given rate
+     * and only when the shown value changed.
+     *
+     * @param updatesPerSecond How often the text may change, e.g. 4.
+     */
+    public void setOverlayMode(int updatesPerSecond) {
+        if (updatesPerSecond <= 0) {
+            throw new IllegalArgumentException("updatesPerSecond must be positive");
+        }
+        mOverlayMode = true;
+        mUpdateIntervalNanos = (long) (NANOS_PER_SECOND / updatesPerSecond);
+        mSinceUpdateNanos = mUpdateIntervalNanos;
+        mDisplayedHundredths = -1;
+        if (mText == null) {
+            mText = new char[PREFIX.length() + INTEGER_DIGITS + 3];
+            PREFIX.getChars(0, PREFIX.length(), mText, 0);
         }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Private methods
+    // ---------------------------------------------------------------------------------------------
+    private void onFrameDuration(long frameDurationNanos) {
+        double currentFps = NANOS_PER_SECOND / frameDurationNanos;
         if (mFps < 0.0) {
             mFps = currentFps;
         } else {
             mFps = 0.9 * mFps + 0.1 * currentFps;
         }
-        mTextView.setText(String.format("FPS: %.2f", mFps));
+        if (mOverlayMode) {
+            mSinceUpdateNanos += frameDurationNanos;
+            if (mSinceUpdateNanos >= mUpdateIntervalNanos) {
+                mSinceUpdateNanos = 0;
+                updateOverlay();
+            }
+        } else {
+            mTextView.setText(String.format("FPS: %.2f", mFps));
+        }
+    }
+
+    private void updateOverlay() {
+        int hundredths = (int) Math.min(Math.round(mFps * 100), MAX_HUNDREDTHS);
+        if (hundredths == mDisplayedHundredths) {
+            return;
+        }
+        mDisplayedHundredths = hundredths;
+
+        // Fill "FPS: ###.##" from the end
+        char[] text = mText;
+        int position = text.length - 1;
+        text[position--] = (char) ('0' + hundredths % 10);
+        text[position--] = (char) ('0' + hundredths / 10 % 10);
+        text[position--] = '.';
+        int integer = hundredths / 100;
+        for (int i = 0; i < INTEGER_DIGITS; i++) {
+            if (integer > 0 || i == 0) {
+                text[position--] = (char) ('0' + integer % 10);
+                integer /= 10;
+            } else {
+                text[position--] = ' ';
+            }
+        }
+        mTextView.setText(text, 0, text.length);
     }
 }
@@ -0,0 +1,158 @@
+package com.example.mypermissionsapp;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.FrameMetrics;
+import android.view.Window;
+
+/**
+ * Frame source backed by {@link Window.OnFrameMetricsAvailableListener}. Frame durations are the
+ * time between the intended vsyncs of consecutive frames, like those of
+ * {@link ChoreographerFrameSource}. Before Android O the start of a frame is estimated from the
+ * time its metrics arrive. The window only reports frames it rendered, so a frame that started
+ * more than a refresh period after the previous one completed ends an idle gap and counts as a
+ * single refresh period. The render time and the per-phase timings are only available through a
+ * {@link PhaseCallback}.
+ * <p>
+ * Metrics are delivered on the main thread after the frame was rendered, like the frames of
+ * {@link ChoreographerFrameSource}.
+ */
+@TargetApi(Build.VERSION_CODES.N)
+class FrameMetricsFrameSource implements FrameSource, Window.OnFrameMetricsAvailableListener {
+    // ---------------------------------------------------------------------------------------------
+    // Constants
+    // ---------------------------------------------------------------------------------------------
+    private static final double NANOS_PER_SECOND = 1000000000.0;
+    private static final float DEFAULT_REFRESH_RATE = 60f;
+
+    // ---------------------------------------------------------------------------------------------
+    // Fields
+    // ---------------------------------------------------------------------------------------------
+    private final Window mWindow;
+    private final PhaseCallback mPhaseCallback;
+    private Callback mCallback;
+    private long mLastFrameTimeNanos;
+    private long mLastFrameEndNanos;
+
+    // ---------------------------------------------------------------------------------------------
+    // Constructors
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * @param window        The window to observe, e.g. "getActivity().getWindow()".
+     * @param phaseCallback Receives per-phase timings of every frame. May be null.
+     */
+    public FrameMetricsFrameSource(Window window, PhaseCallback phaseCallback) {
+        mWindow = window;
+        mPhaseCallback = phaseCallback;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Public methods
+    // ---------------------------------------------------------------------------------------------
+    @Override
+    public void start(Callback callback) {
+        if (mCallback != null) {
+            return;
+        }
+        mCallback = callback;
+        mLastFrameTimeNanos = 0;
+        mWindow.addOnFrameMetricsAvailableListener(this, new Handler(Looper.getMainLooper()));
+    }
+
+    @Override
+    public void stop() {
+        if (mCallback == null) {
+            return;
+        }
+        mWindow.removeOnFrameMetricsAvailableListener(this);
+        mCallback = null;
+    }
+
+    @Override
+    public void onFrameMetricsAvailable(Window window, FrameMetrics frameMetrics,
+        int dropCountSinceLastInvocation) {
+        long totalNanos = frameMetrics.getMetric(FrameMetrics.TOTAL_DURATION);
+        long frameTimeNanos;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            frameTimeNanos = frameMetrics.getMetric(FrameMetrics.INTENDED_VSYNC_TIMESTAMP);
+        } else {
+            frameTimeNanos = System.nanoTime() - totalNanos;
+        }
+
+        Callback callback = mCallback;
+        if (callback != null) {
+            // Frames whose metrics were dropped lie in between, so there is no interval to report
+            if (mLastFrameTimeNanos != 0 && frameTimeNanos > mLastFrameTimeNanos &&
+                dropCountSinceLastInvocation == 0) {
+                long period = getRefreshPeriodNanos(window, frameMetrics);
+                long frameDurationNanos = frameTimeNanos - mLastFrameTimeNanos;
+                if (frameTimeNanos > mLastFrameEndNanos + period) {
+                    frameDurationNanos = period;
+                }
+                callback.onFrame(frameTimeNanos, frameDurationNanos);
+            }
+            mLastFrameTimeNanos = frameTimeNanos;
+            mLastFrameEndNanos = frameTimeNanos + totalNanos;
+        }
+        if (mPhaseCallback != null) {
+            mPhaseCallback.onFramePhases(frameTimeNanos,
+                frameMetrics.getMetric(FrameMetrics.INPUT_HANDLING_DURATION),
+                frameMetrics.getMetric(FrameMetrics.ANIMATION_DURATION) +
+                    frameMetrics.getMetric(FrameMetrics.LAYOUT_MEASURE_DURATION),
+                frameMetrics.getMetric(FrameMetrics.DRAW_DURATION),
+                frameMetrics.getMetric(FrameMetrics.SYNC_DURATION),
+                frameMetrics.getMetric(FrameMetrics.COMMAND_ISSUE_DURATION) +
+                    frameMetrics.getMetric(FrameMetrics.SWAP_BUFFERS_DURATION),
+                totalNanos, dropCountSinceLastInvocation);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Private methods
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Read for every frame, since displays switch between refresh rates, e.g. 60 and 120 Hz.
+     */
+    private static long getRefreshPeriodNanos(Window window, FrameMetrics frameMetrics) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+            long period = frameMetrics.getMetric(FrameMetrics.DEADLINE) -
+                frameMetrics.getMetric(FrameMetrics.INTENDED_VSYNC_TIMESTAMP);
+            if (period > 0) {
+                return period;
+            }
+        }
+        float refreshRate = window.getWindowManager()
+            .getDefaultDisplay()
+            .getRefreshRate();
+        if (refreshRate <= 0) {
+            refreshRate = DEFAULT_REFRESH_RATE;
+        }
+        return (long) (NANOS_PER_SECOND / refreshRate);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Inner classes
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Receives the phase timings of every frame, all in nanoseconds, on the main thread.
+     */
+    interface PhaseCallback {
+        /**
+         * @param frameTimeNanos When the frame started, on the {@link System#nanoTime()} clock.
+         * @param inputNanos     Input handling.
+         * @param layoutNanos    Animations, measure and layout.
+         * @param drawNanos      Recording the display lists.
+         * @param syncNanos      Uploading bitmaps and syncing to the render thread.
+         * @param gpuNanos       Issuing GPU commands and swapping buffers.
+         * @param totalNanos     The whole frame.
+         * @param droppedMetrics Frames whose metrics were dropped since the previous call.
+         */
+        void onFramePhases(long frameTimeNanos, long inputNanos, long layoutNanos, long drawNanos,
+            long syncNanos, long gpuNanos, long totalNanos, int droppedMetrics);
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.mypermissionsapp;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+
+import java.util.Arrays;
+
+/**
+ * Process-wide frame clock shared by every FPS consumer, e.g. a debug overlay, a diagnostics
+ * screen and metrics upload. It owns a single {@link ChoreographerFrameSource} that runs only
+ * while there is at least one subscriber, so the UI thread is never woken by several animators.
+ * <p>
+ * All methods must be called on the main thread, and callbacks are delivered on it.
+ */
+@TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+class FrameSampler implements FrameSource.Callback {
+    // ---------------------------------------------------------------------------------------------
+    // Fields
+    // ---------------------------------------------------------------------------------------------
+    private static FrameSampler sInstance;
+
+    private final FrameSource mSource;
+    private Subscription[] mSubscriptions = new Subscription[0];
+
+    // ---------------------------------------------------------------------------------------------
+    // Constructors
+    // ---------------------------------------------------------------------------------------------
+    private FrameSampler(FrameSource source) {
+        mSource = source;
+    }
+
+    public static FrameSampler getInstance() {
+        if (sInstance == null) {
+            sInstance = new FrameSampler(new ChoreographerFrameSource());
+        }
+        return sInstance;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Public methods
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Delivers every frame to the callback. The clock starts with the first subscription.
+     *
+     * @param callback E.g. a {@link FpsTimeListener} or a {@link FrameTimelineRecorder}.
+     * @return Handle to cancel the subscription.
+     */
+    public Subscription subscribe(FrameSource.Callback callback) {
+        return subscribe(callback, 1);
+    }
+
+    /**
+     * Delivers every n-th frame to the callback, with the mean duration of the last n frames.
+     * Useful for consumers that don't need every frame, like periodic metrics upload.
+     *
+     * @param callback   Receives the frames.
+     * @param decimation 1 delivers every frame, 10 delivers every tenth frame.
+     * @return Handle to cancel the subscription.
+     */
+    public Subscription subscribe(FrameSource.Callback callback, int decimation) {
+        if (decimation < 1) {
+            throw new IllegalArgumentException("decimation must be at least 1: " + decimation);
+        }
+        Subscription subscription = new Subscription(callback, decimation);
+        Subscription[] subscriptions = Arrays.copyOf(mSubscriptions, mSubscriptions.length + 1);
+        subscriptions[subscriptions.length - 1] = subscription;
+        mSubscriptions = subscriptions;
+        if (subscriptions.length == 1) {
+            mSource.start(this);
+        }
+        return subscription;
+    }
+
+    @Override
+    public void onFrame(long frameTimeNanos, long frameDurationNanos) {
+        // Iterates a snapshot, so callbacks may cancel subscriptions
+        for (Subscription subscription : mSubscriptions) {
+            subscription.onFrame(frameTimeNanos, frameDurationNanos);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Private methods
+    // ---------------------------------------------------------------------------------------------
+    private void unsubscribe(Subscription subscription) {
+        Subscription[] subscriptions = mSubscriptions;
+        for (int i = 0; i < subscriptions.length; i++) {
+            if (subscriptions[i] == subscription) {
+                Subscription[] remaining = new Subscription[subscriptions.length - 1];
+                System.arraycopy(subscriptions, 0, remaining, 0, i);
+                System.arraycopy(subscriptions, i + 1, remaining, i, remaining.length - i);
+                mSubscriptions = remaining;
+                if (remaining.length == 0) {
+                    mSource.stop();
+                }
+                return;
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Inner classes
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * A subscriber of the {@link FrameSampler}.
+     */
+    final class Subscription {
+        private final FrameSource.Callback mCallback;
+        private final int mDecimation;
+        private int mSkipped;
+        private long mAccumulatedNanos;
+        private boolean mCancelled;
+
+        private Subscription(FrameSource.Callback callback, int decimation) {
+            mCallback = callback;
+            mDecimation = decimation;
+        }
+
+        /**
+         * Stops delivering frames. The clock stops with the last subscription.
+         */
+        public void cancel() {
+            if (!mCancelled) {
+                mCancelled = true;
+                unsubscribe(this);
+            }
+        }
+
+        private void onFrame(long frameTimeNanos, long frameDurationNanos) {
+            if (mCancelled) {
+                return;
+            }
+            mAccumulatedNanos += frameDurationNanos;
+            if (++mSkipped >= mDecimation) {
+                long meanNanos = mAccumulatedNanos / mDecimation;
+                mSkipped = 0;
+                mAccumulatedNanos = 0;
+                mCallback.onFrame(frameTimeNanos, meanNanos);
+            }
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.mypermissionsapp;
+
+/**
+ * Something that reports rendered frames, e.g. {@link ChoreographerFrameSource} or
+ * {@link FrameMetricsFrameSource}.
+ */
+interface FrameSource {
+
+    /**
+     * Starts delivering frames. Call it on the main thread.
+     *
+     * @param callback Receives every frame until {@link #stop()} is called.
+     */
+    void start(Callback callback);
+
+    /**
+     * Stops delivering frames. Call it on the main thread.
+     */
+    void stop();
+
+    /**
+     * Receives frames from a {@link FrameSource}, always on the main thread, so callbacks may
+     * update views directly.
+     */
+    interface Callback {
+        /**
+         * @param frameTimeNanos     When the frame started, on the {@link System#nanoTime()} clock.
+         * @param frameDurationNanos Time since the previous frame, so 1e9 / frameDurationNanos is
+         *                           the current frame rate.
+         */
+        void onFrame(long frameTimeNanos, long frameDurationNanos);
+    }
+}
@@ -0,0 +1,225 @@
+package com.example.mypermissionsapp;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-memory histogram of frame times with log-linear buckets, in the spirit of HdrHistogram.
+ * Frame times are kept in microseconds up to 16 seconds, in buckets at most 1/64 of their value
+ * wide. Percentiles report the middle of a bucket, so they are within 1% of the recorded times.
+ * <p>
+ * Only one thread, normally the animation thread, may call {@link #recordFrame(long)} and
+ * {@link #reset()}. Any thread may call {@link #snapshot()} without taking a lock.
+ */
+class FrameTimeRecorder {
+    // ---------------------------------------------------------------------------------------------
+    // Constants
+    // ---------------------------------------------------------------------------------------------
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_HALF = SUB_BUCKET_COUNT / 2;
+    private static final int MAX_VALUE_BITS = 24;
+    private static final long MAX_VALUE_MICROS = (1L << MAX_VALUE_BITS) - 1;
+    private static final int BUCKET_COUNT =
+        (MAX_VALUE_BITS - SUB_BUCKET_BITS + 2) * SUB_BUCKET_HALF;
+
+    private static final long NANOS_PER_MICRO = 1000L;
+    private static final long JANK_MICROS = 16667L;
+    private static final long SEVERE_JANK_MICROS = 33333L;
+    /**
+     * Frames slower than this are "frozen" in the Android vitals sense.
+     */
+    private static final long FROZEN_MICROS = 700000L;
+
+    private static final int MAX = 0;
+    private static final int JANK = 1;
+    private static final int SEVERE_JANK = 2;
+    private static final int FROZEN = 3;
+    private static final int COUNTER_COUNT = 4;
+
+    // ---------------------------------------------------------------------------------------------
+    // Fields
+    // ---------------------------------------------------------------------------------------------
+    private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLongArray mCounters = new AtomicLongArray(COUNTER_COUNT);
+
+    // ---------------------------------------------------------------------------------------------
+    // Public methods
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Records one frame. Writer thread only; a few array stores and no allocation.
+     *
+     * @param frameTimeNanos Duration of the frame in nanoseconds.
+     */
+    public void recordFrame(long frameTimeNanos) {
+        long micros = Math.min(Math.max(frameTimeNanos / NANOS_PER_MICRO, 0), MAX_VALUE_MICROS);
+        int index = bucketIndex(micros);
+        // Single writer, so a plain read and an ordered write are enough
+        mBuckets.lazySet(index, mBuckets.get(index) + 1);
+        if (micros > mCounters.get(MAX)) {
+            mCounters.lazySet(MAX, micros);
+        }
+        if (micros > JANK_MICROS) {
+            increment(JANK);
+        }
+        if (micros > SEVERE_JANK_MICROS) {
+            increment(SEVERE_JANK);
+        }
+        if (micros > FROZEN_MICROS) {
+            increment(FROZEN);
+        }
+    }
+
+    /**
+     * Clears all recorded frames. Writer thread only.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            mBuckets.lazySet(i, 0);
+        }
+        for (int i = 0; i < COUNTER_COUNT; i++) {
+            mCounters.lazySet(i, 0);
+        }
+    }
+
+    /**
+     * Copies the current state. Safe to call from any thread; frames recorded while copying may
+     * or may not be included.
+     *
+     * @return Immutable copy of the histogram.
+     */
+    public Snapshot snapshot() {
+        long[] buckets = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets[i] = mBuckets.get(i);
+        }
+        return new Snapshot(buckets, mCounters.get(MAX), mCounters.get(JANK),
+            mCounters.get(SEVERE_JANK), mCounters.get(FROZEN));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Private methods
+    // ---------------------------------------------------------------------------------------------
+    private void increment(int counter) {
+        mCounters.lazySet(counter, mCounters.get(counter) + 1);
+    }
+
+    private static int bucketIndex(long micros) {
+        if (micros < SUB_BUCKET_COUNT) {
+            return (int) micros;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(micros) - SUB_BUCKET_BITS + 1;
+        int subBucket = (int) (micros >> shift);
+        return (shift + 1) * SUB_BUCKET_HALF + subBucket - SUB_BUCKET_HALF;
+    }
+
+    /**
+     * @return The value in the middle of the bucket.
+     */
+    private static long bucketMidpoint(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_HALF - 1;
+        long subBucket = index % SUB_BUCKET_HALF + SUB_BUCKET_HALF;
+        return (subBucket << shift) + ((1L << shift) - 1) / 2;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Inner classes
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Frame time statistics at one point in time.
+     */
+    static final class Snapshot {
+        private final long[] mBuckets;
+        private final long mCount;
+        private final long mMaxMicros;
+        private final long mJankCount;
+        private final long mSevereJankCount;
+        private final long mFrozenCount;
+
+        private Snapshot(long[] buckets, long maxMicros, long jankCount, long severeJankCount,
+            long frozenCount) {
+            long count = 0;
+            for (long bucket : buckets) {
+                count += bucket;
+            }
+            mBuckets = buckets;
+            mCount = count;
+            mMaxMicros = maxMicros;
+            mJankCount = jankCount;
+            mSevereJankCount = severeJankCount;
+            mFrozenCount = frozenCount;
+        }
+
+        public long getFrameCount() {
+            return mCount;
+        }
+
+        /**
+         * @param percentile Between 0 and 100, e.g. 99.
+         * @return Frame time in milliseconds that the given share of frames didn't exceed.
+         */
+        public double getPercentileMillis(double percentile) {
+            if (mCount == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(percentile / 100.0 * mCount);
+            rank = Math.max(1, Math.min(rank, mCount));
+            long seen = 0;
+            for (int i = 0; i < mBuckets.length; i++) {
+                seen += mBuckets[i];
+                if (seen >= rank) {
+                    return Math.min(bucketMidpoint(i), mMaxMicros) / 1000.0;
+                }
+            }
+            return mMaxMicros / 1000.0;
+        }
+
+        public double getP50Millis() {
+            return getPercentileMillis(50);
+        }
+
+        public double getP90Millis() {
+            return getPercentileMillis(90);
+        }
+
+        public double getP99Millis() {
+            return getPercentileMillis(99);
+        }
+
+        public double getMaxMillis() {
+            return mMaxMicros / 1000.0;
+        }
+
+        /**
+         * @return Frames slower than 16.6 ms, i.e. that missed a 60 Hz vsync.
+         */
+        public long getJankCount() {
+            return mJankCount;
+        }
+
+        /**
+         * @return Frames slower than 33.3 ms, i.e. that missed two 60 Hz vsyncs.
+         */
+        public long getSevereJankCount() {
+            return mSevereJankCount;
+        }
+
+        /**
+         * @return Frames slower than 700 ms.
+         */
+        public long getFrozenCount() {
+            return mFrozenCount;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("frames=%d p50=%.1fms p90=%.1fms p99=%.1fms max=%.1fms " +
+                    "jank=%d severe=%d frozen=%d", mCount, getP50Millis(), getP90Millis(),
+                getP99Millis(), getMaxMillis(), mJankCount, mSevereJankCount, mFrozenCount);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.mypermissionsapp;
+
+import android.os.Process;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * Keeps the start and duration of the most recent frames in preallocated primitive arrays and
+ * dumps them as a Chrome trace event JSON file. The file opens in chrome://tracing and in the
+ * Perfetto UI, so jank from field builds can be inspected without attaching systrace.
+ * <p>
+ * Feed it from one thread, e.g. through {@link FpsTimeListener#setTimelineRecorder} or directly
+ * from a {@link FrameSource}. {@link #writeChromeTrace(File)} may be called from any thread.
+ */
+class FrameTimelineRecorder implements FrameSource.Callback {
+    // ---------------------------------------------------------------------------------------------
+    // Constants
+    // ---------------------------------------------------------------------------------------------
+    private static final int MAX_FRAMES_PER_SECOND = 120;
+    private static final long NANOS_PER_SECOND = 1000000000L;
+    private static final double NANOS_PER_MICRO = 1000.0;
+    private static final long JANK_NANOS = 16666667L;
+
+    // ---------------------------------------------------------------------------------------------
+    // Fields
+    // ---------------------------------------------------------------------------------------------
+    private final long[] mStarts;
+    private final long[] mDurations;
+    private final long mWindowNanos;
+    /**
+     * Number of frames ever recorded. Written after the frame data, so readers never see a
+     * frame before its data.
+     */
+    private volatile long mFrameCount;
+
+    // ---------------------------------------------------------------------------------------------
+    // Constructors
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * @param seconds How many seconds of frames to keep, assuming at most 120 frames per second.
+     */
+    public FrameTimelineRecorder(int seconds) {
+        if (seconds <= 0) {
+            throw new IllegalArgumentException("seconds must be positive");
+        }
+        int capacity = seconds * MAX_FRAMES_PER_SECOND;
+        mStarts = new long[capacity];
+        mDurations = new long[capacity];
+        mWindowNanos = seconds * NANOS_PER_SECOND;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Public methods
+    // ---------------------------------------------------------------------------------------------
+    @Override
+    public void onFrame(long frameTimeNanos, long frameDurationNanos) {
+        long count = mFrameCount;
+        int index = (int) (count % mStarts.length);
+        mStarts[index] = frameTimeNanos;
+        mDurations[index] = frameDurationNanos;
+        mFrameCount = count + 1;
+    }
+
+    /**
+     * Writes the frames of the last N seconds as trace events. Frames slower than 16.6 ms are
+     * named "Jank frame" so they stand out in the viewer.
+     *
+     * @param file Where to write the JSON, e.g. in "context.getExternalFilesDir(null)".
+     * @return Number of frames written.
+     * @throws IOException If the file can't be written.
+     */
+    public int writeChromeTrace(File file) throws IOException {
+        int capacity = mStarts.length;
+        long[] starts = new long[capacity];
+        long[] durations = new long[capacity];
+        long end = mFrameCount;
+        long begin = Math.max(0, end - capacity);
+        for (long i = begin; i < end; i++) {
+            int index = (int) (i % capacity);
+            starts[index] = mStarts[index];
+            durations[index] = mDurations[index];
+        }
+        // Frames overwritten by the writer while copying are skipped. The slot of the frame after
+        // the last counted one may be half written, so it counts as overwritten too.
+        begin = Math.max(begin, mFrameCount + 1 - capacity);
+
+        long newest = end > begin ? starts[(int) ((end - 1) % capacity)] : 0;
+        int pid = Process.myPid();
+        int written = 0;
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file),
+            "UTF-8"));
+        try {
+            writer.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[");
+            for (long i = begin; i < end; i++) {
+                int index = (int) (i % capacity);
+                if (newest - starts[index] > mWindowNanos) {
+                    continue;
+                }
+                if (written > 0) {
+                    writer.write(',');
+                }
+                writer.write("\n{\"name\":\"");
+                writer.write(durations[index] > JANK_NANOS ? "Jank frame" : "Frame");
+                writer.write("\",\"cat\":\"frame\",\"ph\":\"X\",\"pid\":");
+                writer.write(Integer.toString(pid));
+                writer.write(",\"tid\":");
+                writer.write(Integer.toString(pid));
+                writer.write(",\"ts\":");
+                writer.write(Double.toString(starts[index] / NANOS_PER_MICRO));
+                writer.write(",\"dur\":");
+                writer.write(Double.toString(durations[index] / NANOS_PER_MICRO));
+                writer.write('}');
+                written++;
+            }
+            writer.write("\n]}\n");
+        } finally {
+            writer.close();
+        }
+        return written;
+    }
+}
@@ -0,0 +1,293 @@
+package com.night_bg.utils;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+import android.support.annotation.DrawableRes;
+import android.util.SparseArray;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Rasterizes a declared set of vector drawables into one or a few shared bitmaps, instead of one
+ * bitmap per icon. Icons are packed on shelves, tallest first, with a pixel of padding so
+ * filtering never samples a neighbour.
+ * <p>
+ * Declare the icons with {@link #add}, then look them up with {@link #getRegion} or
+ * {@link #getDrawable}. The atlas is built on the first lookup, or earlier with
+ * {@link #build(Context)}, and rebuilt when the display density changes. All methods are thread
+ * safe.
+ */
+public class IconAtlas {
+    // ---------------------------------------------------------------------------------------------
+    // Constants
+    // ---------------------------------------------------------------------------------------------
+    private static final int DEFAULT_PAGE_SIZE = 1024;
+    private static final int PADDING = 1;
+
+    // ---------------------------------------------------------------------------------------------
+    // Fields
+    // ---------------------------------------------------------------------------------------------
+    private final int pageSize;
+    private final SparseArray<float[]> sizesDp = new SparseArray<>();
+    private final SparseArray<Region> regions = new SparseArray<>();
+    private Bitmap[] pages;
+    private int builtDensityDpi;
+
+    // ---------------------------------------------------------------------------------------------
+    // Constructors
+    // ---------------------------------------------------------------------------------------------
+    public IconAtlas() {
+        this(DEFAULT_PAGE_SIZE);
+    }
+
+    /**
+     * @param pageSize Maximum width and height of one atlas bitmap in pixels. The last page is
+     *                 only as high as its icons need.
+     */
+    public IconAtlas(int pageSize) {
+        if (pageSize <= 2 * PADDING) {
+            throw new IllegalArgumentException("pageSize too small: " + pageSize);
+        }
+        this.pageSize = pageSize;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Public methods
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Declares a square icon. Declaring a resource again replaces its size.
+     *
+     * @param drawableResId Vector drawable resource.
+     * @param sizeDp        Width and height in dp.
+     */
+    public void add(@DrawableRes int drawableResId, float sizeDp) {
+        add(drawableResId, sizeDp, sizeDp);
+    }
+
+    /**
+     * Declares an icon. Declaring a resource again replaces its size.
+     *
+     * @param drawableResId Vector drawable resource.
+     * @param widthDp       Width in dp.
+     * @param heightDp      Height in dp.
+     */
+    public synchronized void add(@DrawableRes int drawableResId, float widthDp, float heightDp) {
+        sizesDp.put(drawableResId, new float[]{widthDp, heightDp});
+        pages = null;
+    }
+
+    /**
+     * Rasterizes all declared icons now, e.g. on a background thread during the splash screen.
+     *
+     * @param context Context used to inflate the drawables.
+     */
+    public synchronized void build(Context context) {
+        int densityDpi = context.getResources()
+            .getDisplayMetrics().densityDpi;
+        if (pages == null || builtDensityDpi != densityDpi) {
+            pack(context);
+            builtDensityDpi = densityDpi;
+        }
+    }
+
+    /**
+     * @param context       Context used to build the atlas if needed.
+     * @param drawableResId A declared resource.
+     * @return Where the icon is in the atlas, or null if it wasn't declared.
+     */
+    public synchronized Region getRegion(Context context, @DrawableRes int drawableResId) {
+        build(context);
+        return regions.get(drawableResId);
+    }
+
+    /**
+     * @param context       Context used to build the atlas if needed.
+     * @param drawableResId A declared resource.
+     * @return New drawable that draws the icon from the atlas, or null if it wasn't declared.
+     */
+    public Drawable getDrawable(Context context, @DrawableRes int drawableResId) {
+        Region region = getRegion(context, drawableResId);
+        return region != null ? new AtlasDrawable(region) : null;
+    }
+
+    /**
+     * @return Number of atlas bitmaps, 0 before the atlas is built.
+     */
+    public synchronized int getPageCount() {
+        return pages != null ? pages.length : 0;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Private methods
+    // ---------------------------------------------------------------------------------------------
+    private void pack(Context context) {
+        float density = context.getResources()
+            .getDisplayMetrics().density;
+        int count = sizesDp.size();
+        Integer[] order = new Integer[count];
+        final int[] widths = new int[count];
+        final int[] heights = new int[count];
+        for (int i = 0; i < count; i++) {
+            float[] size = sizesDp.valueAt(i);
+            widths[i] = ResourceUtil.dpToPx(size[0], density);
+            heights[i] = ResourceUtil.dpToPx(size[1], density);
+            if (widths[i] + 2 * PADDING > pageSize || heights[i] + 2 * PADDING > pageSize) {
+                throw new IllegalArgumentException("Icon doesn't fit on a page: " +
+                    widths[i] + "x" + heights[i]);
+            }
+            order[i] = i;
+        }
+        // Tallest first keeps the wasted space above shorter icons small
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return heights[b] - heights[a];
+            }
+        });
+
+        int[] pageOf = new int[count];
+        int[] lefts = new int[count];
+        int[] tops = new int[count];
+        List<int[]> pageSizes = new ArrayList<>();
+        int page = 0;
+        int x = PADDING;
+        int y = PADDING;
+        int shelfHeight = 0;
+        int usedWidth = 0;
+        for (int index : order) {
+            if (x + widths[index] + PADDING > pageSize) {
+                x = PADDING;
+                y += shelfHeight + PADDING;
+                shelfHeight = 0;
+            }
+            if (y + heights[index] + PADDING > pageSize) {
+                pageSizes.add(new int[]{usedWidth, y});
+                page++;
+                x = PADDING;
+                y = PADDING;
+                shelfHeight = 0;
+                usedWidth = 0;
+            }
+            pageOf[index] = page;
+            lefts[index] = x;
+            tops[index] = y;
+            x += widths[index] + PADDING;
+            shelfHeight = Math.max(shelfHeight, heights[index]);
+            usedWidth = Math.max(usedWidth, x);
+        }
+        if (count > 0) {
+            pageSizes.add(new int[]{usedWidth, y + shelfHeight + PADDING});
+        }
+
+        // Drawables of the previous build keep their pages, so those are left to the GC
+        Bitmap[] newPages = new Bitmap[pageSizes.size()];
+        Canvas[] canvases = new Canvas[newPages.length];
+        for (int i = 0; i < newPages.length; i++) {
+            int[] size = pageSizes.get(i);
+            newPages[i] = Bitmap.createBitmap(size[0], size[1], Bitmap.Config.ARGB_8888);
+            canvases[i] = new Canvas(newPages[i]);
+        }
+        regions.clear();
+        for (int i = 0; i < count; i++) {
+            Rect rect = new Rect(lefts[i], tops[i], lefts[i] + widths[i], tops[i] + heights[i]);
+            Drawable drawable = ResourceUtil.getMutableDrawable(context, sizesDp.keyAt(i));
+            drawable.setBounds(rect.left, rect.top, rect.right, rect.bottom);
+            drawable.draw(canvases[pageOf[i]]);
+            regions.put(sizesDp.keyAt(i), new Region(newPages[pageOf[i]], rect));
+        }
+        pages = newPages;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Inner classes
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Position of an icon in an atlas bitmap.
+     */
+    public static final class Region {
+        private final Bitmap bitmap;
+        private final Rect rect;
+
+        private Region(Bitmap bitmap, Rect rect) {
+            this.bitmap = bitmap;
+            this.rect = rect;
+        }
+
+        /**
+         * @return The shared atlas bitmap. Don't modify or recycle it.
+         */
+        public Bitmap getBitmap() {
+            return bitmap;
+        }
+
+        /**
+         * @return Copy of the icon bounds within {@link #getBitmap()}.
+         */
+        public Rect getRect() {
+            return new Rect(rect);
+        }
+
+        public int getWidth() {
+            return rect.width();
+        }
+
+        public int getHeight() {
+            return rect.height();
+        }
+    }
+
+    /**
+     * Draws one region of an atlas, scaled to its bounds.
+     */
+    private static final class AtlasDrawable extends Drawable {
+        private final Region region;
+        private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+        private AtlasDrawable(Region region) {
+            this.region = region;
+        }
+
+        @Override
+        public void draw(Canvas canvas) {
+            canvas.drawBitmap(region.bitmap, region.rect, getBounds(), paint);
+        }
+
+        @Override
+        public int getIntrinsicWidth() {
+            return region.getWidth();
+        }
+
+        @Override
+        public int getIntrinsicHeight() {
+            return region.getHeight();
+        }
+
+        @Override
+        public void setAlpha(int alpha) {
+            paint.setAlpha(alpha);
+            invalidateSelf();
+        }
+
+        @Override
+        public void setColorFilter(ColorFilter colorFilter) {
+            paint.setColorFilter(colorFilter);
+            invalidateSelf();
+        }
+
+        @Override
+        public int getOpacity() {
+            return PixelFormat.TRANSLUCENT;
+        }
+    }
+}
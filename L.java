@@ -1,6 +1,8 @@
-
 import android.util.Log;
 
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
  * Helper methods that make logging more consistent throughout the app.
  */
@@ -11,13 +13,41 @@ public class L {
     private static final String LOG_PREFIX = "app_name_";
     private static final int LOG_PREFIX_LENGTH = LOG_PREFIX.length();
     private static final int MAX_LOG_TAG_LENGTH = 23;
+    private static final String PLACEHOLDER = "{}";
+    private static final String RATE_LIMIT_TAG = makeLogTag(LogRateLimiter.class);
+    /**
+     * Tag that has no "log.tag" property, used to read the system default level.
+     */
+    private static final String DEFAULT_LEVEL_TAG = LOG_PREFIX;
+    /**
+     * Index of the logging caller in a stack trace taken inside {@link #logFromStack} or
+     * {@link Logger#log}. Both are called directly from the public logging methods.
+     */
+    private static final int CALLER_DEPTH = 2;
 
     // ---------------------------------------------------------------------------------------------
     // Fields
     // ---------------------------------------------------------------------------------------------
-    private static int sLineNumber;
-    private static String sClassName;
-    private static String sMethodName;
+    private static final ConcurrentHashMap<String, String> sTagsByFileName =
+        new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, Integer> sTagOverrides =
+        new ConcurrentHashMap<>();
+    /**
+     * Resolved minimum level per tag. Cleared whenever the level configuration changes.
+     */
+    private static final ConcurrentHashMap<String, Integer> sTagLevels = new ConcurrentHashMap<>();
+    private static volatile int sMinLevel = Log.VERBOSE;
+    /**
+     * Lowest level any tag is logged at. The static logging methods compare against it before
+     * walking the stack to find their tag.
+     */
+    private static volatile int sLevelFloor = Log.VERBOSE;
+    private static volatile boolean sUseSystemLevels;
+    private static volatile int sLevelGeneration;
+    private static volatile AsyncLogWriter sAsyncWriter;
+    private static volatile Sink[] sSinks = new Sink[0];
+    private static volatile LogRateLimiter sRateLimiter;
+    private static boolean sCrashHandlerInstalled;
 
     // ---------------------------------------------------------------------------------------------
     // Public methods
@@ -30,6 +60,175 @@ public class L {
         return makeLogTag(cls.getSimpleName());
     }
 
+    /**
+     * Creates a logger for the given class. The tag is computed once, so logging through it never
+     * walks the stack unless call site capture is turned on.
+     * WARNING: Don't use this when obfuscating class names with Proguard!
+     *
+     * @param cls The class that will log through the returned logger.
+     * @return Logger with a cached tag and without call site capture.
+     */
+    public static Logger forClass(Class<? extends Object> cls) {
+        return new Logger(makeLogTag(cls), false);
+    }
+
+    /**
+     * Creates a logger for the given class.
+     * WARNING: Don't use this when obfuscating class names with Proguard!
+     *
+     * @param cls             The class that will log through the returned logger.
+     * @param captureCallSite Whether to prefix messages with "[method:line]". The stack is only
+     *                        walked for messages whose level is enabled.
+     * @return Logger with a cached tag.
+     */
+    public static Logger forClass(Class<? extends Object> cls, boolean captureCallSite) {
+        return new Logger(makeLogTag(cls), captureCallSite);
+    }
+
+    /**
+     * Sets the lowest level that will be logged. Calls below it return before doing any work.
+     *
+     * @param level One of {@link Log#VERBOSE}, {@link Log#DEBUG}, {@link Log#INFO},
+     *              {@link Log#WARN}, {@link Log#ERROR} or {@link Log#ASSERT}.
+     */
+    public static void setMinLevel(int level) {
+        sMinLevel = level;
+        invalidateLevels();
+    }
+
+    /**
+     * Raises the lowest level that will be logged for a single tag. A tag can't be made more
+     * verbose than {@link #setMinLevel(int)} allows.
+     *
+     * @param tag   The tag, as returned by {@link #makeLogTag(Class)}. The static methods log with
+     *              the tag of the top-level class of the calling source file.
+     * @param level The lowest level to log for this tag.
+     */
+    public static void setLevel(String tag, int level) {
+        sTagOverrides.put(tag, level);
+        invalidateLevels();
+    }
+
+    /**
+     * Sets whether {@link Log#isLoggable(String, int)} is consulted for every tag. When enabled,
+     * levels can be changed per tag with "adb shell setprop log.tag.&lt;TAG&gt; &lt;LEVEL&gt;".
+     * Note that the system default is INFO, so DEBUG and VERBOSE are silenced unless set
+     * otherwise. The static methods skip levels below the default before they know their tag, so
+     * a tag set more verbose than the default takes effect once it logged at the default level.
+     * A {@link Logger} honors it at once.
+     *
+     * @param useSystemLevels true to honor the system log levels.
+     */
+    public static void setUseSystemLevels(boolean useSystemLevels) {
+        sUseSystemLevels = useSystemLevels;
+        invalidateLevels();
+    }
+
+    /**
+     * Moves writing to logcat off the logging threads. Messages are published into a lock-free
+     * ring buffer and written in batches by a single background thread.
+     *
+     * @param capacity     Number of messages that can be buffered.
+     * @param policy       What to do when the buffer is full.
+     * @param flushOnCrash Whether to write buffered messages before an uncaught exception kills
+     *                     the process.
+     */
+    public static synchronized void startAsync(int capacity, AsyncLogWriter.OverflowPolicy policy,
+        boolean flushOnCrash) {
+        stopAsync();
+        AsyncLogWriter writer = new AsyncLogWriter(capacity, policy);
+        writer.start();
+        sAsyncWriter = writer;
+        if (flushOnCrash) {
+            installCrashHandler();
+        }
+    }
+
+    /**
+     * Writes the pending report of the rate limiter and everything that is buffered, and goes back
+     * to writing on the logging threads.
+     */
+    public static synchronized void stopAsync() {
+        LogRateLimiter limiter = sRateLimiter;
+        if (limiter != null) {
+            limiter.report();
+        }
+        AsyncLogWriter writer = sAsyncWriter;
+        if (writer != null) {
+            sAsyncWriter = null;
+            writer.stop();
+        }
+    }
+
+    /**
+     * Writes the pending "N messages suppressed" report of the rate limiter and everything that
+     * is buffered on the calling thread.
+     */
+    public static void flush() {
+        LogRateLimiter limiter = sRateLimiter;
+        if (limiter != null) {
+            limiter.report();
+        }
+        AsyncLogWriter writer = sAsyncWriter;
+        if (writer != null) {
+            writer.flush();
+        }
+    }
+
+    /**
+     * Adds a destination that receives every logged message in addition to logcat.
+     *
+     * @param sink The sink, e.g. a {@link MappedLogFile}.
+     */
+    public static synchronized void addSink(Sink sink) {
+        Sink[] sinks = Arrays.copyOf(sSinks, sSinks.length + 1);
+        sinks[sinks.length - 1] = sink;
+        sSinks = sinks;
+    }
+
+    /**
+     * @param sink A sink previously passed to {@link #addSink(Sink)}.
+     */
+    public static synchronized void removeSink(Sink sink) {
+        Sink[] sinks = sSinks;
+        for (int i = 0; i < sinks.length; i++) {
+            if (sinks[i] == sink) {
+                Sink[] remaining = new Sink[sinks.length - 1];
+                System.arraycopy(sinks, 0, remaining, 0, i);
+                System.arraycopy(sinks, i + 1, remaining, i, sinks.length - i - 1);
+                sSinks = remaining;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Limits how often each call site and tag may log. Messages over the limit are dropped before
+     * they are formatted and counted in a periodic "N messages suppressed" line.
+     *
+     * @param limiter The limiter to use, or null to log everything.
+     */
+    public static void setRateLimiter(LogRateLimiter limiter) {
+        sRateLimiter = limiter;
+    }
+
+    /**
+     * @param level The level to check.
+     * @return true if messages with the given level are logged for at least one tag.
+     */
+    public static boolean isLoggable(int level) {
+        return level >= sLevelFloor;
+    }
+
+    /**
+     * @param tag   The tag to check.
+     * @param level The level to check.
+     * @return true if messages with the given tag and level will be logged.
+     */
+    public static boolean isLoggable(String tag, int level) {
+        return level >= sMinLevel && level >= levelFor(tag);
+    }
+
     /**
      * Send a DEBUG log message.
      *
@@ -37,8 +236,9 @@ public class L {
      * @see android.util.Log#d(String, String)
      */
     public static void d(String msg) {
-        getMethodNames(new Throwable().getStackTrace());
-        Log.d(sClassName, createLog(msg));
+        if (isLoggable(Log.DEBUG)) {
+            logFromStack(Log.DEBUG, msg, null, null);
+        }
     }
 
     /**
@@ -49,8 +249,59 @@ public class L {
      * @see android.util.Log#d(String, String, Throwable)
      */
     public static void d(String msg, Throwable tr) {
-        getMethodNames(new Throwable().getStackTrace());
-        Log.d(sClassName, createLog(msg), tr);
+        if (isLoggable(Log.DEBUG)) {
+            logFromStack(Log.DEBUG, msg, null, tr);
+        }
+    }
+
+    /**
+     * Send a DEBUG log message built from a format with one "{}" placeholder. Nothing is
+     * formatted when the level is disabled.
+     *
+     * @param format The message format.
+     * @param arg    The argument for the placeholder.
+     */
+    public static void d(String format, Object arg) {
+        if (isLoggable(Log.DEBUG)) {
+            logFromStack(Log.DEBUG, format, new Object[]{arg}, null);
+        }
+    }
+
+    /**
+     * Send a DEBUG log message built from a format with two "{}" placeholders.
+     *
+     * @param format The message format.
+     * @param arg1   The argument for the first placeholder.
+     * @param arg2   The argument for the second placeholder.
+     */
+    public static void d(String format, Object arg1, Object arg2) {
+        if (isLoggable(Log.DEBUG)) {
+            logFromStack(Log.DEBUG, format, new Object[]{arg1, arg2}, null);
+        }
+    }
+
+    /**
+     * Send a DEBUG log message built from a format with "{}" placeholders.
+     *
+     * @param format The message format.
+     * @param args   The arguments for the placeholders.
+     */
+    public static void d(String format, Object... args) {
+        if (isLoggable(Log.DEBUG)) {
+            logFromStack(Log.DEBUG, format, args, null);
+        }
+    }
+
+    /**
+     * Send a DEBUG log message produced by the supplier. The supplier is only called when
+     * the level is enabled.
+     *
+     * @param supplier Produces the message you would like logged.
+     */
+    public static void d(MessageSupplier supplier) {
+        if (isLoggable(Log.DEBUG)) {
+            logFromStack(Log.DEBUG, supplier, null, null);
+        }
     }
 
     /**
@@ -59,8 +310,9 @@ public class L {
      * @param msg The message you would like logged.
      */
     public static void v(String msg) {
-        getMethodNames(new Throwable().getStackTrace());
-        Log.v(sClassName, createLog(msg));
+        if (isLoggable(Log.VERBOSE)) {
+            logFromStack(Log.VERBOSE, msg, null, null);
+        }
     }
 
     /**
@@ -70,29 +322,146 @@ public class L {
      * @param tr  An exception to log
      */
     public static void v(String msg, Throwable tr) {
-        getMethodNames(new Throwable().getStackTrace());
-        Log.v(sClassName, createLog(msg), tr);
+        if (isLoggable(Log.VERBOSE)) {
+            logFromStack(Log.VERBOSE, msg, null, tr);
+        }
+    }
+
+    /**
+     * Send a VERBOSE log message built from a format with one "{}" placeholder. Nothing is
+     * formatted when the level is disabled.
+     *
+     * @param format The message format.
+     * @param arg    The argument for the placeholder.
+     */
+    public static void v(String format, Object arg) {
+        if (isLoggable(Log.VERBOSE)) {
+            logFromStack(Log.VERBOSE, format, new Object[]{arg}, null);
+        }
+    }
 
+    /**
+     * Send a VERBOSE log message built from a format with two "{}" placeholders.
+     *
+     * @param format The message format.
+     * @param arg1   The argument for the first placeholder.
+     * @param arg2   The argument for the second placeholder.
+     */
+    public static void v(String format, Object arg1, Object arg2) {
+        if (isLoggable(Log.VERBOSE)) {
+            logFromStack(Log.VERBOSE, format, new Object[]{arg1, arg2}, null);
+        }
     }
 
     /**
-     * Send an INFO log message.
+     * Send a VERBOSE log message built from a format with "{}" placeholders.
+     *
+     * @param format The message format.
+     * @param args   The arguments for the placeholders.
+     */
+    public static void v(String format, Object... args) {
+        if (isLoggable(Log.VERBOSE)) {
+            logFromStack(Log.VERBOSE, format, args, null);
+        }
+    }
+
+    /**
+     * Send a VERBOSE log message produced by the supplier. The supplier is only called when
+     * the level is enabled.
      *
+     * @param supplier Produces the message you would like logged.
+     */
+    public static void v(MessageSupplier supplier) {
+        if (isLoggable(Log.VERBOSE)) {
+            logFromStack(Log.VERBOSE, supplier, null, null);
+        }
+    }
+
+    /**
+     * Send an INFO log message with an explicit tag.
+     * Note: a call like {@code L.i("a={}", "b")} resolves to this method, not to the
+     * formatting overload. Use {@link #i(String, Object...)} or a {@link Logger} instead.
+     *
+     * @param tag Used to identify the source of a log message.
      * @param msg The message you would like logged.
      */
     public static void i(String tag, String msg) {
-        Log.i(tag, createLog(msg));
+        if (isLoggable(Log.INFO) && isLoggable(tag, Log.INFO)) {
+            dispatch(Log.INFO, tag, null, msg, null, null);
+        }
     }
 
     /**
-     * Send a INFO log message and log the exception.
+     * Send an INFO log message.
+     *
+     * @param msg The message you would like logged.
+     */
+    public static void i(String msg) {
+        if (isLoggable(Log.INFO)) {
+            logFromStack(Log.INFO, msg, null, null);
+        }
+    }
+
+    /**
+     * Send an INFO log message and log the exception.
      *
      * @param msg The message you would like logged.
      * @param tr  An exception to log
      */
     public static void i(String msg, Throwable tr) {
-        getMethodNames(new Throwable().getStackTrace());
-        Log.i(sClassName, createLog(msg), tr);
+        if (isLoggable(Log.INFO)) {
+            logFromStack(Log.INFO, msg, null, tr);
+        }
+    }
+
+    /**
+     * Send an INFO log message built from a format with one "{}" placeholder. Nothing is
+     * formatted when the level is disabled.
+     *
+     * @param format The message format.
+     * @param arg    The argument for the placeholder.
+     */
+    public static void i(String format, Object arg) {
+        if (isLoggable(Log.INFO)) {
+            logFromStack(Log.INFO, format, new Object[]{arg}, null);
+        }
+    }
+
+    /**
+     * Send an INFO log message built from a format with two "{}" placeholders.
+     *
+     * @param format The message format.
+     * @param arg1   The argument for the first placeholder.
+     * @param arg2   The argument for the second placeholder.
+     */
+    public static void i(String format, Object arg1, Object arg2) {
+        if (isLoggable(Log.INFO)) {
+            logFromStack(Log.INFO, format, new Object[]{arg1, arg2}, null);
+        }
+    }
+
+    /**
+     * Send an INFO log message built from a format with "{}" placeholders.
+     *
+     * @param format The message format.
+     * @param args   The arguments for the placeholders.
+     */
+    public static void i(String format, Object... args) {
+        if (isLoggable(Log.INFO)) {
+            logFromStack(Log.INFO, format, args, null);
+        }
+    }
+
+    /**
+     * Send an INFO log message produced by the supplier. The supplier is only called when
+     * the level is enabled.
+     *
+     * @param supplier Produces the message you would like logged.
+     */
+    public static void i(MessageSupplier supplier) {
+        if (isLoggable(Log.INFO)) {
+            logFromStack(Log.INFO, supplier, null, null);
+        }
     }
 
     /**
@@ -101,8 +470,9 @@ public class L {
      * @param msg The message you would like logged.
      */
     public static void w(String msg) {
-        getMethodNames(new Throwable().getStackTrace());
-        Log.w(sClassName, createLog(msg));
+        if (isLoggable(Log.WARN)) {
+            logFromStack(Log.WARN, msg, null, null);
+        }
     }
 
     /**
@@ -112,8 +482,59 @@ public class L {
      * @param tr  An exception to log
      */
     public static void w(String msg, Throwable tr) {
-        getMethodNames(new Throwable().getStackTrace());
-        Log.w(sClassName, createLog(msg), tr);
+        if (isLoggable(Log.WARN)) {
+            logFromStack(Log.WARN, msg, null, tr);
+        }
+    }
+
+    /**
+     * Send a WARNING log message built from a format with one "{}" placeholder. Nothing is
+     * formatted when the level is disabled.
+     *
+     * @param format The message format.
+     * @param arg    The argument for the placeholder.
+     */
+    public static void w(String format, Object arg) {
+        if (isLoggable(Log.WARN)) {
+            logFromStack(Log.WARN, format, new Object[]{arg}, null);
+        }
+    }
+
+    /**
+     * Send a WARNING log message built from a format with two "{}" placeholders.
+     *
+     * @param format The message format.
+     * @param arg1   The argument for the first placeholder.
+     * @param arg2   The argument for the second placeholder.
+     */
+    public static void w(String format, Object arg1, Object arg2) {
+        if (isLoggable(Log.WARN)) {
+            logFromStack(Log.WARN, format, new Object[]{arg1, arg2}, null);
+        }
+    }
+
+    /**
+     * Send a WARNING log message built from a format with "{}" placeholders.
+     *
+     * @param format The message format.
+     * @param args   The arguments for the placeholders.
+     */
+    public static void w(String format, Object... args) {
+        if (isLoggable(Log.WARN)) {
+            logFromStack(Log.WARN, format, args, null);
+        }
+    }
+
+    /**
+     * Send a WARNING log message produced by the supplier. The supplier is only called when
+     * the level is enabled.
+     *
+     * @param supplier Produces the message you would like logged.
+     */
+    public static void w(MessageSupplier supplier) {
+        if (isLoggable(Log.WARN)) {
+            logFromStack(Log.WARN, supplier, null, null);
+        }
     }
 
     /**
@@ -122,19 +543,71 @@ public class L {
      * @param msg The message you would like logged.
      */
     public static void e(String msg) {
-        getMethodNames(new Throwable().getStackTrace());
-        Log.e(sClassName, createLog(msg));
+        if (isLoggable(Log.ERROR)) {
+            logFromStack(Log.ERROR, msg, null, null);
+        }
     }
 
     /**
-     * Send a ERROR log message and log the exception.
+     * Send an ERROR log message and log the exception.
      *
      * @param msg The message you would like logged.
      * @param tr  An exception to log
      */
     public static void e(String msg, Throwable tr) {
-        getMethodNames(new Throwable().getStackTrace());
-        Log.e(sClassName, createLog(msg), tr);
+        if (isLoggable(Log.ERROR)) {
+            logFromStack(Log.ERROR, msg, null, tr);
+        }
+    }
+
+    /**
+     * Send an ERROR log message built from a format with one "{}" placeholder. Nothing is
+     * formatted when the level is disabled.
+     *
+     * @param format The message format.
+     * @param arg    The argument for the placeholder.
+     */
+    public static void e(String format, Object arg) {
+        if (isLoggable(Log.ERROR)) {
+            logFromStack(Log.ERROR, format, new Object[]{arg}, null);
+        }
+    }
+
+    /**
+     * Send an ERROR log message built from a format with two "{}" placeholders.
+     *
+     * @param format The message format.
+     * @param arg1   The argument for the first placeholder.
+     * @param arg2   The argument for the second placeholder.
+     */
+    public static void e(String format, Object arg1, Object arg2) {
+        if (isLoggable(Log.ERROR)) {
+            logFromStack(Log.ERROR, format, new Object[]{arg1, arg2}, null);
+        }
+    }
+
+    /**
+     * Send an ERROR log message built from a format with "{}" placeholders.
+     *
+     * @param format The message format.
+     * @param args   The arguments for the placeholders.
+     */
+    public static void e(String format, Object... args) {
+        if (isLoggable(Log.ERROR)) {
+            logFromStack(Log.ERROR, format, args, null);
+        }
+    }
+
+    /**
+     * Send an ERROR log message produced by the supplier. The supplier is only called when
+     * the level is enabled.
+     *
+     * @param supplier Produces the message you would like logged.
+     */
+    public static void e(MessageSupplier supplier) {
+        if (isLoggable(Log.ERROR)) {
+            logFromStack(Log.ERROR, supplier, null, null);
+        }
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -147,14 +620,440 @@ public class L {
         return LOG_PREFIX + str;
     }
 
-    private static void getMethodNames(StackTraceElement[] sElements) {
-        sClassName = makeLogTag(sElements[1].getFileName());
-        sMethodName = sElements[1].getMethodName();
-        sLineNumber = sElements[1].getLineNumber();
+    private static void logFromStack(int priority, Object message, Object[] args, Throwable tr) {
+        StackTraceElement caller = new Throwable().getStackTrace()[CALLER_DEPTH];
+        String tag = tagForFile(caller.getFileName());
+        if (priority >= levelFor(tag)) {
+            dispatch(priority, tag, caller, message, args, tr);
+        }
+    }
+
+    /**
+     * "Foo.java" is tagged like {@code makeLogTag(Foo.class)}, so a class logs with one tag
+     * through the static methods and through {@link #forClass(Class)}.
+     */
+    private static String tagForFile(String fileName) {
+        String tag = sTagsByFileName.get(fileName);
+        if (tag == null) {
+            int extension = fileName.lastIndexOf('.');
+            tag = makeLogTag(extension > 0 ? fileName.substring(0, extension) : fileName);
+            sTagsByFileName.put(fileName, tag);
+        }
+        return tag;
+    }
+
+    private static int levelFor(String tag) {
+        Integer level = sTagLevels.get(tag);
+        if (level == null) {
+            int generation = sLevelGeneration;
+            level = resolveLevel(tag);
+            sTagLevels.put(tag, level);
+            if (generation != sLevelGeneration) {
+                // The configuration changed while resolving, the level may be stale
+                sTagLevels.remove(tag, level);
+            }
+            if (level < sLevelFloor) {
+                // A tag made more verbose through its system property
+                lowerLevelFloor(generation, level);
+            }
+        }
+        return level;
+    }
+
+    private static int resolveLevel(String tag) {
+        int level = sMinLevel;
+        Integer override = sTagOverrides.get(tag);
+        if (override != null && override > level) {
+            level = override;
+        }
+        if (sUseSystemLevels) {
+            int systemLevel = Log.ASSERT;
+            for (int l = Log.VERBOSE; l < Log.ASSERT; l++) {
+                if (isSystemLoggable(tag, l)) {
+                    systemLevel = l;
+                    break;
+                }
+            }
+            level = Math.max(level, systemLevel);
+        }
+        return level;
+    }
+
+    private static boolean isSystemLoggable(String tag, int level) {
+        try {
+            return Log.isLoggable(tag, level);
+        } catch (IllegalArgumentException e) {
+            // Tags longer than 23 characters are rejected on older APIs, they get the default
+            return Log.isLoggable(DEFAULT_LEVEL_TAG, level);
+        }
+    }
+
+    /**
+     * The generation is bumped before the table is cleared, so a level resolved with the old
+     * configuration and stored after the clear is removed again by {@link #levelFor}.
+     */
+    private static synchronized void invalidateLevels() {
+        sLevelGeneration++;
+        sTagLevels.clear();
+        int floor = sMinLevel;
+        if (sUseSystemLevels) {
+            // Overrides only raise levels, but system properties can lower them per tag
+            floor = resolveLevel(DEFAULT_LEVEL_TAG);
+            for (String tag : sTagsByFileName.values()) {
+                floor = Math.min(floor, levelFor(tag));
+            }
+        }
+        sLevelFloor = floor;
+    }
+
+    private static synchronized void lowerLevelFloor(int generation, int level) {
+        if (generation == sLevelGeneration && level < sLevelFloor) {
+            sLevelFloor = level;
+        }
+    }
+
+    private static String render(Object message, Object[] args) {
+        String msg;
+        if (message instanceof MessageSupplier) {
+            msg = ((MessageSupplier) message).get();
+        } else {
+            msg = (String) message;
+        }
+        if (args == null || args.length == 0 || msg == null) {
+            return msg;
+        }
+        StringBuilder builder = new StringBuilder(msg.length() + 16 * args.length);
+        int start = 0;
+        for (Object arg : args) {
+            int index = msg.indexOf(PLACEHOLDER, start);
+            if (index < 0) {
+                break;
+            }
+            builder.append(msg, start, index)
+                .append(arg);
+            start = index + PLACEHOLDER.length();
+        }
+        return builder.append(msg, start, msg.length())
+            .toString();
+    }
+
+    private static void dispatch(int priority, String tag, StackTraceElement caller,
+        Object message, Object[] args, Throwable tr) {
+        LogRateLimiter limiter = sRateLimiter;
+        if (limiter != null && !limiter.tryAcquire(tag, caller)) {
+            return;
+        }
+        publish(priority, tag, caller, render(message, args), tr);
+    }
+
+    private static void publish(int priority, String tag, StackTraceElement caller, String msg,
+        Throwable tr) {
+        long timeMillis = System.currentTimeMillis();
+        AsyncLogWriter writer = sAsyncWriter;
+        if (writer == null || !writer.publish(timeMillis, priority, tag, caller, msg, tr)) {
+            write(timeMillis, priority, tag, caller, msg, tr);
+        }
+    }
+
+    private static synchronized void installCrashHandler() {
+        if (sCrashHandlerInstalled) {
+            return;
+        }
+        sCrashHandlerInstalled = true;
+        final Thread.UncaughtExceptionHandler previous =
+            Thread.getDefaultUncaughtExceptionHandler();
+        Thread.setDefaultUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+            @Override
+            public void uncaughtException(Thread thread, Throwable ex) {
+                flush();
+                if (previous != null) {
+                    previous.uncaughtException(thread, ex);
+                }
+            }
+        });
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Package methods
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Logs how many messages a {@link LogRateLimiter} suppressed. Called on its timer thread or
+     * from {@link #flush()}.
+     */
+    static void reportSuppressed(long suppressed) {
+        publish(Log.WARN, RATE_LIMIT_TAG, null, suppressed + " messages suppressed", null);
+    }
+
+    /**
+     * Writes a message that already passed the level checks. Called on the logging thread, or on
+     * the drainer thread when {@link AsyncLogWriter} is running.
+     */
+    static void write(long timeMillis, int priority, String tag, StackTraceElement caller,
+        String msg, Throwable tr) {
+        for (Sink sink : sSinks) {
+            try {
+                sink.write(timeMillis, priority, tag, caller, msg, tr);
+            } catch (RuntimeException e) {
+                // A failing sink must neither break the caller nor the other sinks
+            }
+        }
+        if (caller != null) {
+            msg = "[" + caller.getMethodName() + ":" + caller.getLineNumber() + "] " + msg;
+        }
+        if (tr != null) {
+            msg = msg + '\n' + Log.getStackTraceString(tr);
+        }
+        Log.println(priority, tag, msg);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Inner classes
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Lazily produces a log message. It is only called when the message will actually be logged.
+     */
+    public interface MessageSupplier {
+        String get();
     }
 
-    private static String createLog(String log) {
-        return "[" + sMethodName + ":" + sLineNumber + "] " + log;
+    /**
+     * Additional destination for logged messages. Called on the logging thread, or on the drainer
+     * thread when {@link AsyncLogWriter} is running.
+     */
+    public interface Sink {
+        /**
+         * @param timeMillis When the message was logged.
+         * @param priority   The level of the message.
+         * @param tag        The tag of the message.
+         * @param caller     The call site, or null if it was not captured.
+         * @param msg        The formatted message, without the call site prefix.
+         * @param tr         An exception to log, or null.
+         */
+        void write(long timeMillis, int priority, String tag, StackTraceElement caller, String msg,
+            Throwable tr);
     }
 
+    /**
+     * Logger bound to a single class. Create it once per class, e.g.
+     * {@code private static final L.Logger LOG = L.forClass(Foo.class);}
+     * The level check reads a level cached in the logger, so disabled calls don't format, walk the
+     * stack or allocate. Primitive arguments are still boxed by the caller.
+     */
+    public static final class Logger {
+        private final String mTag;
+        private final boolean mCaptureCallSite;
+        /**
+         * The level generation in the upper 32 bits and the resolved level in the lower 32 bits.
+         */
+        private volatile long mLevelStamp = -1L << 32;
+
+        private Logger(String tag, boolean captureCallSite) {
+            mTag = tag;
+            mCaptureCallSite = captureCallSite;
+        }
+
+        public String getTag() {
+            return mTag;
+        }
+
+        public boolean isLoggable(int level) {
+            long stamp = mLevelStamp;
+            int generation = sLevelGeneration;
+            if ((int) (stamp >>> 32) != generation) {
+                stamp = ((long) generation << 32) | levelFor(mTag);
+                mLevelStamp = stamp;
+            }
+            return level >= (int) stamp;
+        }
+
+        public void d(String msg) {
+            if (isLoggable(Log.DEBUG)) {
+                log(Log.DEBUG, msg, null, null);
+            }
+        }
+
+        public void d(String msg, Throwable tr) {
+            if (isLoggable(Log.DEBUG)) {
+                log(Log.DEBUG, msg, null, tr);
+            }
+        }
+
+        public void d(String format, Object arg) {
+            if (isLoggable(Log.DEBUG)) {
+                log(Log.DEBUG, format, new Object[]{arg}, null);
+            }
+        }
+
+        public void d(String format, Object arg1, Object arg2) {
+            if (isLoggable(Log.DEBUG)) {
+                log(Log.DEBUG, format, new Object[]{arg1, arg2}, null);
+            }
+        }
+
+        public void d(String format, Object... args) {
+            if (isLoggable(Log.DEBUG)) {
+                log(Log.DEBUG, format, args, null);
+            }
+        }
+
+        public void d(MessageSupplier supplier) {
+            if (isLoggable(Log.DEBUG)) {
+                log(Log.DEBUG, supplier, null, null);
+            }
+        }
+
+        public void v(String msg) {
+            if (isLoggable(Log.VERBOSE)) {
+                log(Log.VERBOSE, msg, null, null);
+            }
+        }
+
+        public void v(String msg, Throwable tr) {
+            if (isLoggable(Log.VERBOSE)) {
+                log(Log.VERBOSE, msg, null, tr);
+            }
+        }
+
+        public void v(String format, Object arg) {
+            if (isLoggable(Log.VERBOSE)) {
+                log(Log.VERBOSE, format, new Object[]{arg}, null);
+            }
+        }
+
+        public void v(String format, Object arg1, Object arg2) {
+            if (isLoggable(Log.VERBOSE)) {
+                log(Log.VERBOSE, format, new Object[]{arg1, arg2}, null);
+            }
+        }
+
+        public void v(String format, Object... args) {
+            if (isLoggable(Log.VERBOSE)) {
+                log(Log.VERBOSE, format, args, null);
+            }
+        }
+
+        public void v(MessageSupplier supplier) {
+            if (isLoggable(Log.VERBOSE)) {
+                log(Log.VERBOSE, supplier, null, null);
+            }
+        }
+
+        public void i(String msg) {
+            if (isLoggable(Log.INFO)) {
+                log(Log.INFO, msg, null, null);
+            }
+        }
+
+        public void i(String msg, Throwable tr) {
+            if (isLoggable(Log.INFO)) {
+                log(Log.INFO, msg, null, tr);
+            }
+        }
+
+        public void i(String format, Object arg) {
+            if (isLoggable(Log.INFO)) {
+                log(Log.INFO, format, new Object[]{arg}, null);
+            }
+        }
+
+        public void i(String format, Object arg1, Object arg2) {
+            if (isLoggable(Log.INFO)) {
+                log(Log.INFO, format, new Object[]{arg1, arg2}, null);
+            }
+        }
+
+        public void i(String format, Object... args) {
+            if (isLoggable(Log.INFO)) {
+                log(Log.INFO, format, args, null);
+            }
+        }
+
+        public void i(MessageSupplier supplier) {
+            if (isLoggable(Log.INFO)) {
+                log(Log.INFO, supplier, null, null);
+            }
+        }
+
+        public void w(String msg) {
+            if (isLoggable(Log.WARN)) {
+                log(Log.WARN, msg, null, null);
+            }
+        }
+
+        public void w(String msg, Throwable tr) {
+            if (isLoggable(Log.WARN)) {
+                log(Log.WARN, msg, null, tr);
+            }
+        }
+
+        public void w(String format, Object arg) {
+            if (isLoggable(Log.WARN)) {
+                log(Log.WARN, format, new Object[]{arg}, null);
+            }
+        }
+
+        public void w(String format, Object arg1, Object arg2) {
+            if (isLoggable(Log.WARN)) {
+                log(Log.WARN, format, new Object[]{arg1, arg2}, null);
+            }
+        }
+
+        public void w(String format, Object... args) {
+            if (isLoggable(Log.WARN)) {
+                log(Log.WARN, format, args, null);
+            }
+        }
+
+        public void w(MessageSupplier supplier) {
+            if (isLoggable(Log.WARN)) {
+                log(Log.WARN, supplier, null, null);
+            }
+        }
+
+        public void e(String msg) {
+            if (isLoggable(Log.ERROR)) {
+                log(Log.ERROR, msg, null, null);
+            }
+        }
+
+        public void e(String msg, Throwable tr) {
+            if (isLoggable(Log.ERROR)) {
+                log(Log.ERROR, msg, null, tr);
+            }
+        }
+
+        public void e(String format, Object arg) {
+            if (isLoggable(Log.ERROR)) {
+                log(Log.ERROR, format, new Object[]{arg}, null);
+            }
+        }
+
+        public void e(String format, Object arg1, Object arg2) {
+            if (isLoggable(Log.ERROR)) {
+                log(Log.ERROR, format, new Object[]{arg1, arg2}, null);
+            }
+        }
+
+        public void e(String format, Object... args) {
+            if (isLoggable(Log.ERROR)) {
+                log(Log.ERROR, format, args, null);
+            }
+        }
+
+        public void e(MessageSupplier supplier) {
+            if (isLoggable(Log.ERROR)) {
+                log(Log.ERROR, supplier, null, null);
+            }
+        }
+
+        private void log(int priority, Object message, Object[] args, Throwable tr) {
+            StackTraceElement caller = null;
+            if (mCaptureCallSite) {
+                caller = new Throwable().getStackTrace()[CALLER_DEPTH];
+            }
+            dispatch(priority, mTag, caller, message, args, tr);
+        }
+    }
 }
@@ -0,0 +1,184 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Command line tool that turns the segments written by {@link MappedLogFile} back into text. It
+ * has no Android dependencies and runs on any JVM:
+ * <pre>
+ * adb pull /data/data/&lt;package&gt;/files/logs
+ * javac LogFileDecoder.java &amp;&amp; java LogFileDecoder logs
+ * </pre>
+ */
+public class LogFileDecoder {
+    // ---------------------------------------------------------------------------------------------
+    // Constants
+    // ---------------------------------------------------------------------------------------------
+    // Must match MappedLogFile
+    private static final int MAGIC = 0x4C4C4F47;
+    private static final short VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final byte RECORD_END = 0;
+    private static final byte RECORD_STRING = 1;
+    private static final byte RECORD_LOG = 2;
+    private static final String SEGMENT_PREFIX = "log-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String LEVELS = "??VDIWEA";
+    private static final String DATE_FORMAT = "yyyy-MM-dd HH:mm:ss.SSS";
+
+    // ---------------------------------------------------------------------------------------------
+    // Fields
+    // ---------------------------------------------------------------------------------------------
+    private final PrintStream mOut;
+    private final SimpleDateFormat mDateFormat = new SimpleDateFormat(DATE_FORMAT, Locale.US);
+
+    // ---------------------------------------------------------------------------------------------
+    // Constructors
+    // ---------------------------------------------------------------------------------------------
+    public LogFileDecoder(PrintStream out) {
+        mOut = out;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Public methods
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * @param args Segment files or directories containing segments.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: java LogFileDecoder <log directory or segment>...");
+            System.exit(1);
+        }
+        LogFileDecoder decoder = new LogFileDecoder(System.out);
+        for (String arg : args) {
+            File file = new File(arg);
+            if (file.isDirectory()) {
+                for (File segment : listSegments(file)) {
+                    decoder.decode(segment);
+                }
+            } else {
+                decoder.decode(file);
+            }
+        }
+    }
+
+    /**
+     * Prints every record of a segment, one line per record.
+     *
+     * @param segment The segment file.
+     * @throws IOException If the file can't be read or is not a segment.
+     */
+    public void decode(File segment) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(segment, "r");
+        MappedByteBuffer buffer;
+        try {
+            buffer = raf.getChannel()
+                .map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        } finally {
+            raf.close();
+        }
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+            throw new IOException(segment + " is not a log segment");
+        }
+        short version = buffer.getShort();
+        if (version != VERSION) {
+            throw new IOException(segment + " has unsupported version " + version);
+        }
+        buffer.position(HEADER_SIZE);
+
+        List<String> strings = new ArrayList<>();
+        try {
+            while (buffer.hasRemaining()) {
+                byte type = buffer.get();
+                if (type == RECORD_STRING) {
+                    short id = buffer.getShort();
+                    String value = readUtf8(buffer, buffer.getShort());
+                    while (strings.size() <= id) {
+                        strings.add(null);
+                    }
+                    strings.set(id, value);
+                } else if (type == RECORD_LOG) {
+                    printLog(buffer, strings);
+                } else {
+                    // RECORD_END, or the process died in the middle of a record
+                    break;
+                }
+            }
+        } catch (RuntimeException e) {
+            mOut.println("<" + segment.getName() + " truncated at byte " + buffer.position() + ">");
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Private methods
+    // ---------------------------------------------------------------------------------------------
+    private static File[] listSegments(File directory) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return new File[0];
+        }
+        List<File> segments = new ArrayList<>();
+        for (File file : files) {
+            String name = file.getName();
+            if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                segments.add(file);
+            }
+        }
+        File[] result = segments.toArray(new File[segments.size()]);
+        Arrays.sort(result);
+        return result;
+    }
+
+    private static String readUtf8(ByteBuffer buffer, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private static String lookup(List<String> strings, short id) {
+        if (id < 0 || id >= strings.size() || strings.get(id) == null) {
+            return "#" + id;
+        }
+        return strings.get(id);
+    }
+
+    private void printLog(ByteBuffer buffer, List<String> strings) {
+        long timeMillis = buffer.getLong();
+        int priority = buffer.get();
+        short tagId = buffer.getShort();
+        short methodId = buffer.getShort();
+        int line = buffer.getInt();
+        String msg = readUtf8(buffer, buffer.getInt());
+
+        StringBuilder builder = new StringBuilder();
+        builder.append(mDateFormat.format(new Date(timeMillis)))
+            .append(' ')
+            .append(priority >= 0 && priority < LEVELS.length() ? LEVELS.charAt(priority) : '?')
+            .append('/')
+            .append(lookup(strings, tagId))
+            .append(": ");
+        if (methodId >= 0) {
+            builder.append('[')
+                .append(lookup(strings, methodId))
+                .append(':')
+                .append(line)
+                .append("] ");
+        }
+        mOut.println(builder.append(msg));
+    }
+}
@@ -0,0 +1,242 @@
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stops log storms from flooding logcat. Every call site gets its own token bucket, and tags can
+ * get an additional shared bucket or 1-in-N sampling. Messages that don't pass are counted and
+ * reported in a single "N messages suppressed" line at most once per report interval. The report
+ * is written by a timer, so the end of a storm is reported even if nothing is logged afterwards,
+ * and {@link L#flush()} writes it at once.
+ * Install it with {@link L#setRateLimiter(LogRateLimiter)}.
+ */
+public final class LogRateLimiter {
+    // ---------------------------------------------------------------------------------------------
+    // Constants
+    // ---------------------------------------------------------------------------------------------
+    private static final long NANOS_PER_SECOND = 1000000000L;
+    private static final long NANOS_PER_MILLI = 1000000L;
+    private static final long DEFAULT_REPORT_INTERVAL_MILLIS = 5000L;
+    private static final long THREAD_KEEP_ALIVE_SECONDS = 5;
+
+    // ---------------------------------------------------------------------------------------------
+    // Fields
+    // ---------------------------------------------------------------------------------------------
+    private final double mSiteRate;
+    private final int mSiteBurst;
+    private final ConcurrentHashMap<String, double[]> mTagLimits = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Integer> mTagSampling = new ConcurrentHashMap<>();
+    /**
+     * Buckets keyed by {@link StackTraceElement}, or by tag when the call site isn't captured.
+     */
+    private final ConcurrentHashMap<Object, Bucket> mSiteBuckets = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Bucket> mTagBuckets = new ConcurrentHashMap<>();
+    private final AtomicLong mSuppressed = new AtomicLong();
+    private final AtomicLong mLastReportNanos = new AtomicLong(System.nanoTime());
+    private volatile long mReportIntervalNanos = DEFAULT_REPORT_INTERVAL_MILLIS * NANOS_PER_MILLI;
+    private final Runnable mReport = new Runnable() {
+        @Override
+        public void run() {
+            report();
+        }
+    };
+    /**
+     * Shared by all limiters. Its thread only exists while a report is pending.
+     */
+    private static ScheduledThreadPoolExecutor sReporter;
+
+    // ---------------------------------------------------------------------------------------------
+    // Constructors
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * @param messagesPerSecond Sustained rate allowed for each call site.
+     * @param burst             How many messages a call site may log at once after being quiet.
+     */
+    public LogRateLimiter(double messagesPerSecond, int burst) {
+        if (messagesPerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("rate must be positive and burst at least 1");
+        }
+        mSiteRate = messagesPerSecond;
+        mSiteBurst = burst;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Public methods
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Adds a limit shared by all call sites of a tag, on top of the per call site limit.
+     *
+     * @param tag               The tag, as returned by {@link L#makeLogTag(Class)}.
+     * @param messagesPerSecond Sustained rate allowed for the tag.
+     * @param burst             How many messages the tag may log at once after being quiet.
+     */
+    public void setTagLimit(String tag, double messagesPerSecond, int burst) {
+        if (messagesPerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("rate must be positive and burst at least 1");
+        }
+        mTagLimits.put(tag, new double[]{messagesPerSecond, burst});
+        mTagBuckets.remove(tag);
+    }
+
+    /**
+     * Logs only every n-th message of each call site of a tag. Sampling is applied before the
+     * rate limits.
+     *
+     * @param tag The tag, as returned by {@link L#makeLogTag(Class)}.
+     * @param n   1 logs every message, 10 logs one message in ten.
+     */
+    public void setSampling(String tag, int n) {
+        if (n < 1) {
+            throw new IllegalArgumentException("n must be at least 1: " + n);
+        }
+        mTagSampling.put(tag, n);
+    }
+
+    /**
+     * @param millis How often the number of suppressed messages is reported. 5 seconds by default.
+     */
+    public void setReportInterval(long millis) {
+        mReportIntervalNanos = millis * NANOS_PER_MILLI;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Package methods
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * @param tag    The tag of the message.
+     * @param caller The call site, or null if it was not captured.
+     * @return true if the message may be logged.
+     */
+    boolean tryAcquire(String tag, StackTraceElement caller) {
+        long now = System.nanoTime();
+        Object siteKey = caller != null ? caller : tag;
+        Bucket site = mSiteBuckets.get(siteKey);
+        if (site == null) {
+            site = new Bucket(mSiteRate, mSiteBurst, now);
+            Bucket existing = mSiteBuckets.putIfAbsent(siteKey, site);
+            if (existing != null) {
+                site = existing;
+            }
+        }
+
+        Integer sampling = mTagSampling.get(tag);
+        if (sampling != null && !site.sample(sampling)) {
+            suppress(now);
+            return false;
+        }
+        if (!site.tryTake(now)) {
+            suppress(now);
+            return false;
+        }
+        Bucket shared = tagBucket(tag, now);
+        if (shared != null && !shared.tryTake(now)) {
+            // The message isn't logged, so it must not use up the call site's budget
+            site.refund();
+            suppress(now);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Writes the number of messages suppressed since the last report right away, e.g. before the
+     * process goes away.
+     */
+    void report() {
+        long suppressed = mSuppressed.getAndSet(0);
+        if (suppressed > 0) {
+            mLastReportNanos.set(System.nanoTime());
+            L.reportSuppressed(suppressed);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Private methods
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The first suppressed message after a report schedules the next one, so an idle limiter
+     * has no timer running.
+     */
+    private void suppress(long now) {
+        if (mSuppressed.incrementAndGet() == 1) {
+            long delay = Math.max(0, mLastReportNanos.get() + mReportIntervalNanos - now);
+            getReporter().schedule(mReport, delay, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private static synchronized ScheduledThreadPoolExecutor getReporter() {
+        if (sReporter == null) {
+            sReporter = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "L-rate-limiter");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            sReporter.setKeepAliveTime(THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+            sReporter.allowCoreThreadTimeOut(true);
+        }
+        return sReporter;
+    }
+
+    private Bucket tagBucket(String tag, long now) {
+        Bucket bucket = mTagBuckets.get(tag);
+        if (bucket == null) {
+            double[] limit = mTagLimits.get(tag);
+            if (limit == null) {
+                return null;
+            }
+            bucket = new Bucket(limit[0], (int) limit[1], now);
+            Bucket existing = mTagBuckets.putIfAbsent(tag, bucket);
+            if (existing != null) {
+                bucket = existing;
+            }
+        }
+        return bucket;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Inner classes
+    // ---------------------------------------------------------------------------------------------
+    private static final class Bucket {
+        private final double mTokensPerNano;
+        private final int mBurst;
+        private double mTokens;
+        private long mLastRefillNanos;
+        private long mSampleCount;
+
+        private Bucket(double messagesPerSecond, int burst, long now) {
+            mTokensPerNano = messagesPerSecond / NANOS_PER_SECOND;
+            mBurst = burst;
+            mTokens = burst;
+            mLastRefillNanos = now;
+        }
+
+        private synchronized boolean tryTake(long now) {
+            if (now > mLastRefillNanos) {
+                mTokens = Math.min(mBurst, mTokens + (now - mLastRefillNanos) * mTokensPerNano);
+                mLastRefillNanos = now;
+            }
+            if (mTokens >= 1.0) {
+                mTokens -= 1.0;
+                return true;
+            }
+            return false;
+        }
+
+        private synchronized void refund() {
+            mTokens = Math.min(mBurst, mTokens + 1.0);
+        }
+
+        private synchronized boolean sample(int n) {
+            return mSampleCount++ % n == 0;
+        }
+    }
+}
@@ -0,0 +1,341 @@
+import android.util.Log;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+
+/**
+ * {@link L.Sink} that appends compact binary records to a rolling set of memory-mapped segment
+ * files. The records live in the page cache as soon as they are written, so they survive the
+ * process being killed. Use {@link LogFileDecoder} to turn the segments back into text.
+ * <p>
+ * Segment layout: a 16 byte header (magic, version, creation time) followed by records. Tags and
+ * method names are interned per segment and written once as string records, log records refer to
+ * them by id. A zero record type marks the end of the written data. The type of a record is
+ * written last, so a record cut short by the process dying is never decoded.
+ */
+public final class MappedLogFile implements L.Sink {
+    // ---------------------------------------------------------------------------------------------
+    // Constants
+    // ---------------------------------------------------------------------------------------------
+    private static final int MAGIC = 0x4C4C4F47;
+    private static final short VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final byte RECORD_END = 0;
+    private static final byte RECORD_STRING = 1;
+    private static final byte RECORD_LOG = 2;
+    private static final String SEGMENT_PREFIX = "log-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private static final int STRING_RECORD_OVERHEAD = 1 + 2 + 2;
+    private static final int LOG_RECORD_OVERHEAD = 1 + 8 + 1 + 2 + 2 + 4 + 4;
+    private static final int MIN_SEGMENT_SIZE = 4096;
+    private static final short NO_ID = -1;
+
+    // ---------------------------------------------------------------------------------------------
+    // Fields
+    // ---------------------------------------------------------------------------------------------
+    private final File mDirectory;
+    private final int mSegmentSize;
+    private final int mMaxSegments;
+    private final ArrayDeque<File> mSegments = new ArrayDeque<>();
+    private final HashMap<String, Integer> mStringIds = new HashMap<>();
+    private int mNextSegmentIndex;
+    private MappedByteBuffer mBuffer;
+    private boolean mClosed;
+
+    // ---------------------------------------------------------------------------------------------
+    // Constructors
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Opens a new segment in the given directory. Segments from previous runs are kept, subject to
+     * the segment limit.
+     *
+     * @param directory   Where the segments are stored, e.g. "new File(context.getFilesDir(),
+     *                    "logs")".
+     * @param segmentSize Size of each segment in bytes.
+     * @param maxSegments How many segments to keep before the oldest one is deleted.
+     * @throws IOException If the directory or the first segment can't be created.
+     */
+    public MappedLogFile(File directory, int segmentSize, int maxSegments) throws IOException {
+        if (segmentSize < MIN_SEGMENT_SIZE) {
+            throw new IllegalArgumentException("segmentSize must be at least " + MIN_SEGMENT_SIZE);
+        }
+        if (maxSegments < 1) {
+            throw new IllegalArgumentException("maxSegments must be at least 1");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can't create " + directory);
+        }
+        mDirectory = directory;
+        mSegmentSize = segmentSize;
+        mMaxSegments = maxSegments;
+
+        File[] existing = listSegments(directory);
+        for (File file : existing) {
+            mSegments.addLast(file);
+        }
+        if (existing.length > 0) {
+            mNextSegmentIndex = segmentIndex(existing[existing.length - 1]) + 1;
+        }
+        openSegment();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Public methods
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the segment files of a log directory, oldest first.
+     */
+    public static File[] listSegments(File directory) {
+        File[] files = directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+            }
+        });
+        if (files == null) {
+            return new File[0];
+        }
+        Arrays.sort(files);
+        return files;
+    }
+
+    @Override
+    public synchronized void write(long timeMillis, int priority, String tag,
+        StackTraceElement caller, String msg, Throwable tr) {
+        if (mClosed) {
+            return;
+        }
+        String method = caller != null ? caller.getMethodName() : null;
+        int line = caller != null ? caller.getLineNumber() : -1;
+        String trace = tr != null ? Log.getStackTraceString(tr) : null;
+        if (msg == null) {
+            msg = "null";
+        }
+
+        int payloadBytes = utf8Length(msg) + (trace != null ? utf8Length(trace) + 1 : 0);
+        int required = LOG_RECORD_OVERHEAD + stringRecordSize(tag) + stringRecordSize(method) +
+            payloadBytes;
+        try {
+            // A record that doesn't even fit a fresh segment is cut below instead
+            boolean fresh = mBuffer.position() == HEADER_SIZE;
+            if (!fresh && required > mBuffer.remaining() - 1 ||
+                mStringIds.size() >= Short.MAX_VALUE - 1) {
+                rotate();
+            }
+            short tagId = intern(tag);
+            short methodId = method != null ? intern(method) : NO_ID;
+
+            // Messages bigger than a whole segment are cut to what fits
+            int maxPayloadBytes = Math.max(0, mBuffer.remaining() - 1 - LOG_RECORD_OVERHEAD);
+            int start = skipRecordType();
+            mBuffer.putLong(timeMillis);
+            mBuffer.put((byte) priority);
+            mBuffer.putShort(tagId);
+            mBuffer.putShort(methodId);
+            mBuffer.putInt(line);
+            int lengthPosition = mBuffer.position();
+            mBuffer.putInt(0);
+            int length = putUtf8(msg, maxPayloadBytes);
+            if (trace != null && length + 1 <= maxPayloadBytes) {
+                mBuffer.put((byte) '\n');
+                length += 1 + putUtf8(trace, maxPayloadBytes - length - 1);
+            }
+            mBuffer.putInt(lengthPosition, length);
+            publishRecord(start, RECORD_LOG);
+        } catch (IOException e) {
+            mClosed = true;
+            Log.e(L.makeLogTag(MappedLogFile.class), "Disabling log file", e);
+        }
+    }
+
+    /**
+     * Writes the current segment to storage. Only needed to protect against power loss; the data
+     * survives a process crash without it.
+     */
+    public synchronized void force() {
+        if (mBuffer != null) {
+            mBuffer.force();
+        }
+    }
+
+    /**
+     * Writes the current segment to storage and stops accepting records.
+     */
+    public synchronized void close() {
+        force();
+        mClosed = true;
+        mBuffer = null;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Private methods
+    // ---------------------------------------------------------------------------------------------
+    private static int segmentIndex(File file) {
+        String name = file.getName();
+        try {
+            return Integer.parseInt(
+                name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private int stringRecordSize(String str) {
+        if (str == null || mStringIds.containsKey(str)) {
+            return 0;
+        }
+        return STRING_RECORD_OVERHEAD + utf8Length(str);
+    }
+
+    /**
+     * @return Number of bytes {@link #putUtf8} writes for the whole string.
+     */
+    private static int utf8Length(String str) {
+        int length = str.length();
+        int bytes = 0;
+        for (int i = 0; i < length; i++) {
+            char c = str.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length &&
+                Character.isLowSurrogate(str.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    private short intern(String str) throws IOException {
+        Integer id = mStringIds.get(str);
+        if (id != null) {
+            return id.shortValue();
+        }
+        short newId = (short) mStringIds.size();
+        mStringIds.put(str, (int) newId);
+        int start = skipRecordType();
+        mBuffer.putShort(newId);
+        int lengthPosition = mBuffer.position();
+        mBuffer.putShort((short) 0);
+        int length = putUtf8(str, Math.min(Short.MAX_VALUE, mBuffer.remaining() - 1));
+        mBuffer.putShort(lengthPosition, (short) length);
+        publishRecord(start, RECORD_STRING);
+        return newId;
+    }
+
+    /**
+     * Leaves the type byte of a new record at {@link #RECORD_END}, so a process that dies while
+     * the record is written leaves a segment that ends before it.
+     *
+     * @return Position of the type byte.
+     */
+    private int skipRecordType() {
+        int start = mBuffer.position();
+        mBuffer.position(start + 1);
+        return start;
+    }
+
+    /**
+     * Marks the end after the record, then writes its type, which makes it visible to
+     * {@link LogFileDecoder}.
+     */
+    private void publishRecord(int start, byte type) {
+        mBuffer.put(mBuffer.position(), RECORD_END);
+        mBuffer.put(start, type);
+    }
+
+    /**
+     * Encodes straight into the mapped buffer without allocating.
+     *
+     * @return Number of bytes written.
+     */
+    private int putUtf8(String str, int maxBytes) {
+        MappedByteBuffer buffer = mBuffer;
+        int start = buffer.position();
+        int length = str.length();
+        for (int i = 0; i < length; i++) {
+            char c = str.charAt(i);
+            int written = buffer.position() - start;
+            if (c < 0x80) {
+                if (written + 1 > maxBytes) {
+                    break;
+                }
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                if (written + 2 > maxBytes) {
+                    break;
+                }
+                buffer.put((byte) (0xC0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length &&
+                Character.isLowSurrogate(str.charAt(i + 1))) {
+                if (written + 4 > maxBytes) {
+                    break;
+                }
+                int codePoint = Character.toCodePoint(c, str.charAt(++i));
+                buffer.put((byte) (0xF0 | (codePoint >> 18)));
+                buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+            } else {
+                if (written + 3 > maxBytes) {
+                    break;
+                }
+                buffer.put((byte) (0xE0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+        return buffer.position() - start;
+    }
+
+    private void rotate() throws IOException {
+        mBuffer.force();
+        openSegment();
+    }
+
+    private void openSegment() throws IOException {
+        File file = new File(mDirectory,
+            String.format(Locale.US, "%s%08d%s", SEGMENT_PREFIX, mNextSegmentIndex++,
+                SEGMENT_SUFFIX));
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(0);
+            raf.setLength(mSegmentSize);
+            // The mapping stays valid after the channel is closed
+            mBuffer = raf.getChannel()
+                .map(FileChannel.MapMode.READ_WRITE, 0, mSegmentSize);
+        } finally {
+            raf.close();
+        }
+        mBuffer.putInt(MAGIC);
+        mBuffer.putShort(VERSION);
+        mBuffer.putShort((short) 0);
+        mBuffer.putLong(System.currentTimeMillis());
+        mBuffer.put(mBuffer.position(), RECORD_END);
+        mStringIds.clear();
+
+        mSegments.addLast(file);
+        while (mSegments.size() > mMaxSegments) {
+            File oldest = mSegments.removeFirst();
+            if (!oldest.delete()) {
+                Log.w(L.makeLogTag(MappedLogFile.class), "Can't delete " + oldest);
+            }
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.example.mypermissionsapp;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Adapts rendering quality to the frame rate actually measured on the device instead of
+ * hard-coded per-model tiers. Every evaluation window counts the frames that missed the frame
+ * budget by more than half a frame, i.e. that took at least one more vsync. When more than the
+ * allowed share of frames is slow, e.g. 10% for the 90th percentile, the next
+ * {@link QualityStep} is degraded. Once almost no frame is slow the last degraded step is
+ * restored. Counting exact misses instead of comparing percentiles with the budget works with
+ * vsync-capped intervals, where a perfect frame takes exactly the budget.
+ * <p>
+ * Step-downs need several bad windows in a row (hysteresis), and step-ups additionally wait for
+ * a cooldown after the last change, so the quality doesn't oscillate. Subscribe it like any
+ * other consumer: "FrameSampler.getInstance().subscribe(governor)". Steps are called on the
+ * thread that delivers frames.
+ */
+class QualityGovernor implements FrameSource.Callback {
+    // ---------------------------------------------------------------------------------------------
+    // Constants
+    // ---------------------------------------------------------------------------------------------
+    private static final long NANOS_PER_MILLI = 1000000L;
+    private static final double NANOS_PER_SECOND = 1000000000.0;
+    /**
+     * A frame is slow when it takes longer than the budget plus this share of the budget, so the
+     * jitter of a perfect vsync interval never counts.
+     */
+    private static final double SLOW_FRAME_TOLERANCE = 0.5;
+
+    // ---------------------------------------------------------------------------------------------
+    // Fields
+    // ---------------------------------------------------------------------------------------------
+    private final long mSlowFrameNanos;
+    private final List<QualityStep> mSteps = new ArrayList<>();
+
+    private double mMaxSlowShare = 0.1;
+    private double mStepUpSlowShare = 0.01;
+    private long mWindowNanos = 1000 * NANOS_PER_MILLI;
+    private int mStepDownWindows = 2;
+    private int mStepUpWindows = 5;
+    private long mCooldownNanos = 10000 * NANOS_PER_MILLI;
+
+    private int mLevel;
+    private long mWindowElapsedNanos;
+    private long mSinceChangeNanos;
+    private int mWindowFrames;
+    private int mWindowSlowFrames;
+    private int mBadWindows;
+    private int mGoodWindows;
+
+    // ---------------------------------------------------------------------------------------------
+    // Constructors
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * @param targetFps The frame rate to sustain, e.g. 30 or 60.
+     */
+    public QualityGovernor(double targetFps) {
+        if (targetFps <= 0) {
+            throw new IllegalArgumentException("targetFps must be positive");
+        }
+        mSlowFrameNanos = (long) (NANOS_PER_SECOND / targetFps * (1 + SLOW_FRAME_TOLERANCE));
+        mSinceChangeNanos = mCooldownNanos;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Public methods
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Adds a step. Steps are degraded in the order they were added and restored in reverse, so
+     * add the cheapest loss of quality first, e.g. shadows, then particles, then bitmap config.
+     *
+     * @param step The quality step.
+     */
+    public void addStep(QualityStep step) {
+        mSteps.add(step);
+    }
+
+    /**
+     * @return Number of degraded steps, 0 for full quality.
+     */
+    public int getLevel() {
+        return mLevel;
+    }
+
+    /**
+     * @param percentile Percentile of frames that must stay within the budget, e.g. 90 allows
+     *                   10% slow frames per window. 90 by default.
+     */
+    public void setPercentile(double percentile) {
+        mMaxSlowShare = 1 - percentile / 100.0;
+    }
+
+    /**
+     * @param millis Length of one evaluation window in frame time. 1 second by default.
+     */
+    public void setWindow(long millis) {
+        mWindowNanos = millis * NANOS_PER_MILLI;
+    }
+
+    /**
+     * @param windows Consecutive windows over budget before stepping down. 2 by default.
+     */
+    public void setStepDownWindows(int windows) {
+        mStepDownWindows = windows;
+    }
+
+    /**
+     * @param windows   Consecutive good windows before stepping up. 5 by default.
+     * @param slowShare Share of slow frames a window may have to count as good, 0.01 by default.
+     */
+    public void setStepUp(int windows, double slowShare) {
+        mStepUpWindows = windows;
+        mStepUpSlowShare = slowShare;
+    }
+
+    /**
+     * @param millis Minimum time after any change before stepping up. 10 seconds by default.
+     */
+    public void setCooldown(long millis) {
+        mCooldownNanos = millis * NANOS_PER_MILLI;
+    }
+
+    @Override
+    public void onFrame(long frameTimeNanos, long frameDurationNanos) {
+        if (frameDurationNanos <= 0) {
+            return;
+        }
+        mWindowFrames++;
+        if (frameDurationNanos > mSlowFrameNanos) {
+            mWindowSlowFrames++;
+        }
+        mWindowElapsedNanos += frameDurationNanos;
+        mSinceChangeNanos += frameDurationNanos;
+        if (mWindowElapsedNanos >= mWindowNanos) {
+            evaluate((double) mWindowSlowFrames / mWindowFrames);
+            mWindowFrames = 0;
+            mWindowSlowFrames = 0;
+            mWindowElapsedNanos = 0;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Private methods
+    // ---------------------------------------------------------------------------------------------
+    private void evaluate(double slowShare) {
+        if (slowShare > mMaxSlowShare) {
+            mGoodWindows = 0;
+            if (++mBadWindows >= mStepDownWindows && mLevel < mSteps.size()) {
+                mSteps.get(mLevel++)
+                    .degrade();
+                onLevelChanged();
+            }
+        } else if (slowShare <= mStepUpSlowShare) {
+            mBadWindows = 0;
+            if (++mGoodWindows >= mStepUpWindows && mSinceChangeNanos >= mCooldownNanos &&
+                mLevel > 0) {
+                mSteps.get(--mLevel)
+                    .restore();
+                onLevelChanged();
+            }
+        } else {
+            // Some slow frames but within the allowed share, keep the current level
+            mBadWindows = 0;
+            mGoodWindows = 0;
+        }
+    }
+
+    private void onLevelChanged() {
+        mBadWindows = 0;
+        mGoodWindows = 0;
+        mSinceChangeNanos = 0;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Inner classes
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * One thing that can be turned down when frames are too slow, e.g. shadows.
+     */
+    interface QualityStep {
+        /**
+         * Lower the quality, e.g. disable shadows.
+         */
+        void degrade();
+
+        /**
+         * Undo {@link #degrade()}.
+         */
+        void restore();
+    }
+}
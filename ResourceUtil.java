@@ -1,32 +1,755 @@
 package com.night_bg.utils;
 
+import android.content.ComponentCallbacks2;
 import android.content.Context;
+import android.content.res.Configuration;
+import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.drawable.Drawable;
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.support.annotation.ColorInt;
 import android.support.annotation.DrawableRes;
 import android.support.v4.graphics.drawable.DrawableCompat;
 import android.support.v7.widget.AppCompatDrawableManager;
+import android.util.LruCache;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Helper utils for vector drawables
+ * <p>
+ * Rasterized bitmaps are kept in a memory cache keyed by resource id, size, density, night mode
+ * and tint, so the same icon is inflated and drawn only once. Bitmaps returned by the
+ * getCachedBitmap methods are the cached ones and shared: don't modify or recycle them. The
+ * getBitmap methods return a copy of the cached bitmap that belongs to the caller.
+ * <p>
+ * Overloads with a size rasterize straight at that size, so callers don't need to scale the
+ * result. {@link Bitmap.Config#ALPHA_8} keeps only the shape of single-color icons at a quarter of
+ * the memory; tint them at draw time through the color of the Paint. {@link Bitmap.Config#RGB_565}
+ * halves the memory of icons without transparency.
+ * <p>
+ * Rasterization and copies draw into bitmaps taken from a {@link BitmapPool}. Callers hand
+ * bitmaps back with {@link #release(Bitmap)}: copies go to the pool at once, cached bitmaps are
+ * counted and go to the pool once they left the cache and no caller holds them anymore. A cached
+ * bitmap that is never released only misses the pool; it is not kept alive. Cache and pool are
+ * trimmed automatically when the system asks for memory.
+ * <p>
+ * {@link #getBitmapsAsync} and {@link #prefetch} rasterize batches in parallel on a small
+ * background executor, e.g. during the splash screen, so binding never inflates vectors inline.
+ * After {@link #enableDiskCache(Context)} cached bitmaps also survive restarts of the app.
  */
 public class ResourceUtil {
+    // ---------------------------------------------------------------------------------------------
+    // Constants
+    // ---------------------------------------------------------------------------------------------
+    /**
+     * Share of the heap the cache may use by default.
+     */
+    private static final int DEFAULT_CACHE_DIVISOR = 32;
+    /**
+     * Share of the heap the pool may use by default.
+     */
+    private static final int DEFAULT_POOL_DIVISOR = 64;
+    private static final Bitmap.Config DEFAULT_CONFIG = Bitmap.Config.ARGB_8888;
+    private static final int MAX_THREADS = 4;
+    private static final long THREAD_KEEP_ALIVE_SECONDS = 5;
+
+    // ---------------------------------------------------------------------------------------------
+    // Fields
+    // ---------------------------------------------------------------------------------------------
+    private static final BitmapPool pool = new BitmapPool(defaultSize(DEFAULT_POOL_DIVISOR));
+    /**
+     * Guards the reference counts of cache entries and {@link #handedOut}.
+     */
+    private static final Object references = new Object();
+    /**
+     * Cached bitmaps currently held by callers. Bitmap compares by identity, and an entry that
+     * left the cache no longer references its bitmap, so a bitmap that is never released is
+     * collected once the caller drops it.
+     */
+    private static final Map<Bitmap, Entry> handedOut = new WeakHashMap<>();
+    private static final LruCache<Key, Entry> cache =
+        new LruCache<Key, Entry>(defaultSize(DEFAULT_CACHE_DIVISOR)) {
+            @Override
+            protected int sizeOf(Key key, Entry entry) {
+                return BitmapPool.getByteCount(entry.bitmap);
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, Key key, Entry oldValue,
+                Entry newValue) {
+                Bitmap bitmap = oldValue.bitmap;
+                synchronized (references) {
+                    oldValue.removed = true;
+                    oldValue.bitmap = null;
+                    if (oldValue.count > 0) {
+                        // Pooled by the last release
+                        return;
+                    }
+                }
+                pool.release(bitmap);
+            }
+        };
+    private static boolean callbacksRegistered;
+    private static ThreadPoolExecutor executor;
+    private static Handler mainHandler;
+    private static volatile VectorDiskCache diskCache;
+
+    // ---------------------------------------------------------------------------------------------
+    // Public methods
+    // ---------------------------------------------------------------------------------------------
 
+    /**
+     * @param context       Context used to inflate the drawable.
+     * @param drawableResId Vector drawable resource.
+     * @return Bitmap at the intrinsic size of the drawable, owned by the caller.
+     */
     public static Bitmap getBitmapFromVectorDrawable(Context context, @DrawableRes int drawableResId) {
+        return copy(context, key(context, drawableResId, 0, 0, false, 0, DEFAULT_CONFIG));
+    }
+
+    /**
+     * @param context       Context used to inflate the drawable.
+     * @param drawableResId Vector drawable resource.
+     * @param tint          Color the drawable is tinted with.
+     * @return Bitmap at the intrinsic size of the drawable, owned by the caller.
+     */
+    public static Bitmap getBitmapFromVectorDrawable(Context context,
+        @DrawableRes int drawableResId, @ColorInt int tint) {
+        return copy(context, key(context, drawableResId, 0, 0, true, tint, DEFAULT_CONFIG));
+    }
+
+    /**
+     * @param context       Context used to inflate the drawable.
+     * @param drawableResId Vector drawable resource.
+     * @param width         Width in pixels.
+     * @param height        Height in pixels.
+     * @param config        E.g. {@link Bitmap.Config#ALPHA_8} for single-color icons.
+     * @return Bitmap of the given size, owned by the caller.
+     */
+    public static Bitmap getBitmapFromVectorDrawable(Context context,
+        @DrawableRes int drawableResId, int width, int height, Bitmap.Config config) {
+        return copy(context, key(context, drawableResId, width, height, false, 0, config));
+    }
+
+    /**
+     * @param context       Context used to inflate the drawable.
+     * @param drawableResId Vector drawable resource.
+     * @param width         Width in pixels.
+     * @param height        Height in pixels.
+     * @param tint          Color the drawable is tinted with. Ignored for ALPHA_8.
+     * @param config        E.g. {@link Bitmap.Config#RGB_565} for opaque icons.
+     * @return Bitmap of the given size, owned by the caller.
+     */
+    public static Bitmap getBitmapFromVectorDrawable(Context context,
+        @DrawableRes int drawableResId, int width, int height, @ColorInt int tint,
+        Bitmap.Config config) {
+        return copy(context, key(context, drawableResId, width, height, true, tint, config));
+    }
+
+    /**
+     * @param context       Context used to inflate the drawable.
+     * @param drawableResId Vector drawable resource.
+     * @param widthDp       Width in dp.
+     * @param heightDp      Height in dp.
+     * @param config        E.g. {@link Bitmap.Config#ALPHA_8} for single-color icons.
+     * @return Bitmap of the given size, owned by the caller.
+     */
+    public static Bitmap getBitmapFromVectorDrawableDp(Context context,
+        @DrawableRes int drawableResId, float widthDp, float heightDp, Bitmap.Config config) {
+        float density = context.getResources()
+            .getDisplayMetrics().density;
+        return getBitmapFromVectorDrawable(context, drawableResId, dpToPx(widthDp, density),
+            dpToPx(heightDp, density), config);
+    }
+
+    /**
+     * The bitmap is shared with every other caller of the same drawable and size: never draw
+     * into or recycle it. Hand it back with {@link #release(Bitmap)} once it isn't drawn
+     * anymore, so its memory can be reused after it left the cache.
+     *
+     * @param context       Context used to inflate the drawable.
+     * @param drawableResId Vector drawable resource.
+     * @return Cached bitmap at the intrinsic size of the drawable.
+     */
+    public static Bitmap getCachedBitmapFromVectorDrawable(Context context,
+        @DrawableRes int drawableResId) {
+        return getBitmap(context, key(context, drawableResId, 0, 0, false, 0, DEFAULT_CONFIG));
+    }
+
+    /**
+     * The bitmap is shared with every other caller of the same drawable, size and tint: never
+     * draw into or recycle it. Hand it back with {@link #release(Bitmap)} once it isn't drawn
+     * anymore, so its memory can be reused after it left the cache.
+     *
+     * @param context       Context used to inflate the drawable.
+     * @param drawableResId Vector drawable resource.
+     * @param tint          Color the drawable is tinted with.
+     * @return Cached bitmap at the intrinsic size of the drawable.
+     */
+    public static Bitmap getCachedBitmapFromVectorDrawable(Context context,
+        @DrawableRes int drawableResId, @ColorInt int tint) {
+        return getBitmap(context, key(context, drawableResId, 0, 0, true, tint, DEFAULT_CONFIG));
+    }
+
+    /**
+     * The bitmap is shared with every other caller of the same drawable and size: never draw
+     * into or recycle it. Hand it back with {@link #release(Bitmap)} once it isn't drawn
+     * anymore, so its memory can be reused after it left the cache.
+     *
+     * @param context       Context used to inflate the drawable.
+     * @param drawableResId Vector drawable resource.
+     * @param width         Width in pixels.
+     * @param height        Height in pixels.
+     * @param config        E.g. {@link Bitmap.Config#ALPHA_8} for single-color icons.
+     * @return Cached bitmap of the given size.
+     */
+    public static Bitmap getCachedBitmapFromVectorDrawable(Context context,
+        @DrawableRes int drawableResId, int width, int height, Bitmap.Config config) {
+        return getBitmap(context, key(context, drawableResId, width, height, false, 0, config));
+    }
+
+    /**
+     * The bitmap is shared with every other caller of the same drawable, size and tint: never
+     * draw into or recycle it. Hand it back with {@link #release(Bitmap)} once it isn't drawn
+     * anymore, so its memory can be reused after it left the cache.
+     *
+     * @param context       Context used to inflate the drawable.
+     * @param drawableResId Vector drawable resource.
+     * @param width         Width in pixels.
+     * @param height        Height in pixels.
+     * @param tint          Color the drawable is tinted with. Ignored for ALPHA_8.
+     * @param config        E.g. {@link Bitmap.Config#RGB_565} for opaque icons.
+     * @return Cached bitmap of the given size.
+     */
+    public static Bitmap getCachedBitmapFromVectorDrawable(Context context,
+        @DrawableRes int drawableResId, int width, int height, @ColorInt int tint,
+        Bitmap.Config config) {
+        return getBitmap(context, key(context, drawableResId, width, height, true, tint, config));
+    }
+
+    /**
+     * The bitmap is shared with every other caller of the same drawable and size: never draw
+     * into or recycle it. Hand it back with {@link #release(Bitmap)} once it isn't drawn
+     * anymore, so its memory can be reused after it left the cache.
+     *
+     * @param context       Context used to inflate the drawable.
+     * @param drawableResId Vector drawable resource.
+     * @param widthDp       Width in dp.
+     * @param heightDp      Height in dp.
+     * @param config        E.g. {@link Bitmap.Config#ALPHA_8} for single-color icons.
+     * @return Cached bitmap of the given size.
+     */
+    public static Bitmap getCachedBitmapFromVectorDrawableDp(Context context,
+        @DrawableRes int drawableResId, float widthDp, float heightDp, Bitmap.Config config) {
+        float density = context.getResources()
+            .getDisplayMetrics().density;
+        return getCachedBitmapFromVectorDrawable(context, drawableResId,
+            dpToPx(widthDp, density), dpToPx(heightDp, density), config);
+    }
+
+    /**
+     * Rasterizes a batch in parallel in the background and fills the cache. Callback runs on the
+     * main thread once all bitmaps are ready.
+     *
+     * @param context  Any context. Only the application context is kept.
+     * @param requests Drawables and sizes to rasterize.
+     * @param callback Receives the shared cached bitmaps in the order of the requests, with null
+     *                 for drawables that failed to load. May be null. Each bitmap is released
+     *                 like those of the getCachedBitmap methods.
+     */
+    public static void getBitmapsAsync(Context context, final Request[] requests,
+        final Callback callback) {
+        final Context appContext = context.getApplicationContext();
+        registerCallbacks(appContext);
+        final Bitmap[] bitmaps = new Bitmap[requests.length];
+        final AtomicInteger remaining = new AtomicInteger(requests.length);
+        final Runnable deliver = new Runnable() {
+            @Override
+            public void run() {
+                callback.onBitmapsLoaded(bitmaps);
+            }
+        };
+        if (requests.length == 0) {
+            if (callback != null) {
+                getMainHandler().post(deliver);
+            }
+            return;
+        }
+
+        ThreadPoolExecutor executor = getExecutor();
+        for (int i = 0; i < requests.length; i++) {
+            final int index = i;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Bitmap bitmap = getBitmap(appContext, requests[index].toKey(appContext));
+                        if (callback != null) {
+                            bitmaps[index] = bitmap;
+                        } else {
+                            release(bitmap);
+                        }
+                    } catch (RuntimeException e) {
+                        // E.g. Resources.NotFoundException, reported as a null bitmap
+                    }
+                    if (remaining.decrementAndGet() == 0 && callback != null) {
+                        getMainHandler().post(deliver);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Rasterizes drawables into the cache in the background, e.g. during the splash screen, so
+     * the first screen finds them cached.
+     *
+     * @param context  Any context. Only the application context is kept.
+     * @param requests Drawables and sizes to rasterize.
+     */
+    public static void prefetch(Context context, Request... requests) {
+        getBitmapsAsync(context, requests, null);
+    }
+
+    /**
+     * Hands a bitmap back, so the next bitmap of the same size can reuse it. A copy from a
+     * getBitmap method goes to the pool at once. A cached bitmap goes to the pool after it left
+     * the cache and every caller released it. Release each bitmap once per get.
+     *
+     * @param bitmap Bitmap the caller doesn't use anymore.
+     */
+    public static void release(Bitmap bitmap) {
+        synchronized (references) {
+            Entry entry = handedOut.get(bitmap);
+            if (entry != null) {
+                if (--entry.count > 0) {
+                    return;
+                }
+                handedOut.remove(bitmap);
+                if (!entry.removed) {
+                    // Stays cached for the next caller
+                    return;
+                }
+            }
+        }
+        pool.release(bitmap);
+    }
+
+    /**
+     * @return The pool rasterization draws into, e.g. to read its reuse ratio.
+     */
+    public static BitmapPool getBitmapPool() {
+        return pool;
+    }
+
+    /**
+     * Keeps the pixels of cached bitmaps in the cache directory, so later launches skip inflating
+     * and drawing. Entries of other app versions are deleted in the background.
+     *
+     * @param context Any context. Only the application context is kept.
+     */
+    public static synchronized void enableDiskCache(Context context) {
+        if (diskCache == null) {
+            diskCache = new VectorDiskCache(context.getApplicationContext());
+        }
+    }
+
+    /**
+     * Sets the memory budget of the cache. Defaults to 1/32 of the heap.
+     *
+     * @param maxBytes Maximum bytes of all cached bitmaps.
+     */
+    public static void setCacheSize(int maxBytes) {
+        cache.resize(maxBytes);
+    }
+
+    /**
+     * Sets the memory budget of the pool. Defaults to 1/64 of the heap.
+     *
+     * @param maxBytes Maximum bytes of all pooled bitmaps.
+     */
+    public static void setPoolSize(int maxBytes) {
+        pool.setMaxSize(maxBytes);
+    }
+
+    /**
+     * Evicts cached and pooled bitmaps depending on how much memory the system needs back. Called
+     * automatically through the application context, but may also be called directly.
+     *
+     * @param level Level passed to onTrimMemory.
+     */
+    public static void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            cache.evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND ||
+            level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW &&
+                level < ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            cache.trimToSize(cache.maxSize() / 2);
+        }
+        // Evicted bitmaps went to the pool, so it is trimmed last
+        pool.trimMemory(level);
+    }
+
+    /**
+     * Evicts all cached bitmaps.
+     */
+    public static void clearCache() {
+        cache.evictAll();
+    }
+
+    /**
+     * @return Number of requests served from the cache.
+     */
+    public static int getCacheHitCount() {
+        return cache.hitCount();
+    }
+
+    /**
+     * @return Number of requests that had to rasterize the drawable.
+     */
+    public static int getCacheMissCount() {
+        return cache.missCount();
+    }
+
+    /**
+     * @return Bytes currently held by the cache.
+     */
+    public static int getCacheSize() {
+        return cache.size();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Package methods
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * @return A drawable with its own state, so several threads can draw the same resource.
+     */
+    static Drawable getMutableDrawable(Context context, @DrawableRes int drawableResId) {
         Drawable drawable = AppCompatDrawableManager.get()
             .getDrawable(context, drawableResId);
-        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
-            drawable = (DrawableCompat.wrap(drawable)).mutate();
+        return (DrawableCompat.wrap(drawable)).mutate();
+    }
+
+    /**
+     * Rounds like {@link android.util.TypedValue}: to the nearest pixel, and at least 1.
+     */
+    static int dpToPx(float dp, float density) {
+        return Math.max(1, (int) (dp * density + 0.5f));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Private methods
+    // ---------------------------------------------------------------------------------------------
+    /**
+     * @return The cached bitmap, counted as held by the caller until {@link #release(Bitmap)}.
+     */
+    private static Bitmap getBitmap(Context context, Key key) {
+        registerCallbacks(context);
+        Entry entry = cache.get(key);
+        if (entry != null) {
+            synchronized (references) {
+                // An entry evicted since the lookup may already be in the pool
+                if (!entry.removed) {
+                    return hold(entry);
+                }
+            }
         }
 
-        Bitmap bitmap =
-            Bitmap.createBitmap(drawable.getIntrinsicWidth(), drawable.getIntrinsicHeight(),
-                Bitmap.Config.ARGB_8888);
+        VectorDiskCache disk = diskCache;
+        Bitmap bitmap = null;
+        if (disk != null) {
+            bitmap = disk.get(key.toFileName(), key.config, pool);
+        }
+        if (bitmap == null) {
+            bitmap = rasterize(context, key);
+            if (disk != null) {
+                disk.put(key.toFileName(), bitmap);
+            }
+        }
+        entry = new Entry(bitmap);
+        synchronized (references) {
+            hold(entry);
+        }
+        cache.put(key, entry);
+        return bitmap;
+    }
+
+    /**
+     * Called with the lock on {@link #references}.
+     */
+    private static Bitmap hold(Entry entry) {
+        entry.count++;
+        handedOut.put(entry.bitmap, entry);
+        return entry.bitmap;
+    }
+
+    /**
+     * @return A copy of the cached bitmap in a bitmap from the pool.
+     */
+    private static Bitmap copy(Context context, Key key) {
+        Bitmap cached = getBitmap(context, key);
+        try {
+            Bitmap bitmap = pool.get(cached.getWidth(), cached.getHeight(), cached.getConfig());
+            new Canvas(bitmap).drawBitmap(cached, 0, 0, null);
+            return bitmap;
+        } finally {
+            release(cached);
+        }
+    }
+
+    private static Bitmap rasterize(Context context, Key key) {
+        Drawable drawable = getMutableDrawable(context, key.resId);
+        if (key.tinted) {
+            DrawableCompat.setTint(drawable, key.tint);
+        }
+
+        int width = key.width > 0 ? key.width : drawable.getIntrinsicWidth();
+        int height = key.height > 0 ? key.height : drawable.getIntrinsicHeight();
+        Bitmap bitmap = pool.get(width, height, key.config);
         Canvas canvas = new Canvas(bitmap);
         drawable.setBounds(0, 0, canvas.getWidth(), canvas.getHeight());
         drawable.draw(canvas);
         return bitmap;
     }
+
+    private static Key key(Context context, int resId, int width, int height, boolean tinted,
+        int tint, Bitmap.Config config) {
+        if (width < 0 || height < 0) {
+            throw new IllegalArgumentException("Invalid size: " + width + "x" + height);
+        }
+        // An alpha mask has no color, so all tints share one bitmap
+        if (config == Bitmap.Config.ALPHA_8) {
+            tinted = false;
+            tint = 0;
+        }
+        Resources resources = context.getResources();
+        int densityDpi = resources.getDisplayMetrics().densityDpi;
+        // Drawables and the colors they reference may have -night variants
+        boolean night = (resources.getConfiguration().uiMode & Configuration.UI_MODE_NIGHT_MASK) ==
+            Configuration.UI_MODE_NIGHT_YES;
+        return new Key(resId, width, height, densityDpi, night, tinted, tint, config);
+    }
+
+    private static int defaultSize(int divisor) {
+        return (int) Math.min(Runtime.getRuntime()
+            .maxMemory() / divisor, Integer.MAX_VALUE);
+    }
+
+    private static synchronized ThreadPoolExecutor getExecutor() {
+        if (executor == null) {
+            int threads = Math.max(1, Math.min(MAX_THREADS, Runtime.getRuntime()
+                .availableProcessors() - 1));
+            executor = new ThreadPoolExecutor(threads, threads, THREAD_KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(final Runnable runnable) {
+                        Thread thread = new Thread(new Runnable() {
+                            @Override
+                            public void run() {
+                                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                                runnable.run();
+                            }
+                        }, "ResourceUtil-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+            executor.allowCoreThreadTimeOut(true);
+        }
+        return executor;
+    }
+
+    private static synchronized Handler getMainHandler() {
+        if (mainHandler == null) {
+            mainHandler = new Handler(Looper.getMainLooper());
+        }
+        return mainHandler;
+    }
+
+    private static synchronized void registerCallbacks(Context context) {
+        if (callbacksRegistered) {
+            return;
+        }
+        callbacksRegistered = true;
+        context.getApplicationContext()
+            .registerComponentCallbacks(new ComponentCallbacks2() {
+                @Override
+                public void onTrimMemory(int level) {
+                    trimMemory(level);
+                }
+
+                @Override
+                public void onConfigurationChanged(Configuration newConfig) {
+                }
+
+                @Override
+                public void onLowMemory() {
+                    trimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+                }
+            });
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Inner classes
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Receives the result of {@link #getBitmapsAsync}.
+     */
+    public interface Callback {
+        /**
+         * Called on the main thread.
+         *
+         * @param bitmaps Cached bitmaps in the order of the requests, null for failed drawables.
+         */
+        void onBitmapsLoaded(Bitmap[] bitmaps);
+    }
+
+    /**
+     * A drawable and the size to rasterize it at, for {@link #getBitmapsAsync}.
+     */
+    public static final class Request {
+        private final int resId;
+        private final int width;
+        private final int height;
+        private final boolean tinted;
+        private final int tint;
+        private final Bitmap.Config config;
+
+        /**
+         * @param drawableResId Vector drawable resource, rasterized at its intrinsic size.
+         */
+        public Request(@DrawableRes int drawableResId) {
+            this(drawableResId, 0, 0, false, 0, DEFAULT_CONFIG);
+        }
+
+        /**
+         * @param drawableResId Vector drawable resource.
+         * @param width         Width in pixels.
+         * @param height        Height in pixels.
+         * @param config        Bitmap config.
+         */
+        public Request(@DrawableRes int drawableResId, int width, int height,
+            Bitmap.Config config) {
+            this(drawableResId, width, height, false, 0, config);
+        }
+
+        /**
+         * @param drawableResId Vector drawable resource.
+         * @param width         Width in pixels.
+         * @param height        Height in pixels.
+         * @param tint          Color the drawable is tinted with.
+         * @param config        Bitmap config.
+         */
+        public Request(@DrawableRes int drawableResId, int width, int height,
+            @ColorInt int tint, Bitmap.Config config) {
+            this(drawableResId, width, height, true, tint, config);
+        }
+
+        private Request(int resId, int width, int height, boolean tinted, int tint,
+            Bitmap.Config config) {
+            this.resId = resId;
+            this.width = width;
+            this.height = height;
+            this.tinted = tinted;
+            this.tint = tint;
+            this.config = config;
+        }
+
+        private Key toKey(Context context) {
+            return key(context, resId, width, height, tinted, tint, config);
+        }
+    }
+
+    /**
+     * A cached bitmap and how many callers hold it. Guarded by {@link #references}.
+     */
+    private static final class Entry {
+        /**
+         * Null once the entry left the cache.
+         */
+        private Bitmap bitmap;
+        private int count;
+        /**
+         * Whether the entry left the cache.
+         */
+        private boolean removed;
+
+        private Entry(Bitmap bitmap) {
+            this.bitmap = bitmap;
+        }
+    }
+
+    private static final class Key {
+        private final int resId;
+        /**
+         * Target size in pixels, or 0 for the intrinsic size.
+         */
+        private final int width;
+        private final int height;
+        private final int densityDpi;
+        private final boolean night;
+        private final boolean tinted;
+        private final int tint;
+        private final Bitmap.Config config;
+
+        private Key(int resId, int width, int height, int densityDpi, boolean night,
+            boolean tinted, int tint, Bitmap.Config config) {
+            this.resId = resId;
+            this.width = width;
+            this.height = height;
+            this.densityDpi = densityDpi;
+            this.night = night;
+            this.tinted = tinted;
+            this.tint = tint;
+            this.config = config;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return resId == other.resId && width == other.width && height == other.height &&
+                densityDpi == other.densityDpi && night == other.night && tinted == other.tinted &&
+                tint == other.tint && config == other.config;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = resId;
+            result = 31 * result + width;
+            result = 31 * result + height;
+            result = 31 * result + densityDpi;
+            result = 31 * result + (night ? 1 : 0);
+            result = 31 * result + (tinted ? 1 : 0);
+            result = 31 * result + tint;
+            result = 31 * result + config.hashCode();
+            return result;
+        }
+
+        private String toFileName() {
+            return Integer.toHexString(resId) + '_' + width + 'x' + height + '_' + densityDpi +
+                (night ? "_night" : "") + '_' + (tinted ? Integer.toHexString(tint) : "none") +
+                '_' + config.name();
+        }
+    }
 }
@@ -0,0 +1,23 @@
+/**
+ * One check of {@link RootRuleEngine}, e.g. looking for an su binary.
+ */
+public interface RootRule {
+    /**
+     * @return Short name for statistics, e.g. "su-binary".
+     */
+    String getName();
+
+    /**
+     * Cost before the rule has run once. Afterwards the measured latency is used.
+     *
+     * @return Estimated duration of {@link #check()} in microseconds.
+     */
+    long getEstimatedCostMicros();
+
+    /**
+     * Called on a background thread. Should return soon after the thread is interrupted.
+     *
+     * @return How sure the rule is that the device is rooted: 0 for no evidence, 1 for certain.
+     */
+    float check();
+}
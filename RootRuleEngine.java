@@ -0,0 +1,295 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs {@link RootRule}s one after another, cheapest per hit first, until their combined score
+ * reaches the threshold. A rule's cost is its measured average latency, or its estimate until it
+ * has run, divided by its hit rate. So cheap rules that often find root run early, and the
+ * expensive ones only run when nothing else did.
+ * <p>
+ * Scores are combined like independent probabilities: 1 - (1 - a) * (1 - b) * ...
+ * Rules can be added at any time and from any thread. Statistics of earlier processes can be
+ * restored with {@link #restoreStats(List)}, so the order doesn't start from the estimates on
+ * every launch.
+ */
+public class RootRuleEngine {
+    // ---------------------------------------------------------------------------------------------
+    // Constants
+    // ---------------------------------------------------------------------------------------------
+    private static final float DEFAULT_THRESHOLD = 0.5f;
+    private static final long NANOS_PER_MICRO = 1000L;
+
+    // ---------------------------------------------------------------------------------------------
+    // Fields
+    // ---------------------------------------------------------------------------------------------
+    private volatile Entry[] entries = new Entry[0];
+    private volatile float threshold = DEFAULT_THRESHOLD;
+    /**
+     * Restored statistics of rules that haven't been added yet, by name.
+     */
+    private final Map<String, Stats> pendingStats = new HashMap<>();
+
+    // ---------------------------------------------------------------------------------------------
+    // Public methods
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * @param rule Rule to run from the next evaluation on.
+     */
+    public synchronized void addRule(RootRule rule) {
+        Entry[] current = entries;
+        Entry[] updated = Arrays.copyOf(current, current.length + 1);
+        Entry entry = new Entry(rule);
+        Stats pending = pendingStats.remove(rule.getName());
+        if (pending != null) {
+            entry.add(pending);
+        }
+        updated[current.length] = entry;
+        entries = updated;
+    }
+
+    /**
+     * Adds statistics measured by earlier processes, matched to the rules by name. Rules added
+     * later pick up their statistics when they are added.
+     *
+     * @param stats E.g. the result of {@link #getStats()} in an earlier process.
+     */
+    public synchronized void restoreStats(List<Stats> stats) {
+        for (Stats restored : stats) {
+            Entry target = null;
+            for (Entry entry : entries) {
+                if (entry.rule.getName()
+                    .equals(restored.getName())) {
+                    target = entry;
+                    break;
+                }
+            }
+            if (target != null) {
+                target.add(restored);
+            } else {
+                pendingStats.put(restored.getName(), restored);
+            }
+        }
+    }
+
+    /**
+     * @param threshold Combined score from which the device counts as rooted. 0.5 by default.
+     */
+    public void setThreshold(float threshold) {
+        this.threshold = threshold;
+    }
+
+    /**
+     * Runs the rules until the threshold is reached, all rules ran or the thread is interrupted.
+     *
+     * @return The combined result.
+     */
+    public Verdict evaluate() {
+        // Costs change while other evaluations run, so they are read once before sorting
+        Entry[] ordered = entries.clone();
+        double[] costs = new double[ordered.length];
+        for (int i = 0; i < ordered.length; i++) {
+            costs[i] = ordered[i].costPerHit();
+        }
+        // Insertion sort of both arrays, there are only a handful of rules
+        for (int i = 1; i < ordered.length; i++) {
+            Entry entry = ordered[i];
+            double cost = costs[i];
+            int j = i - 1;
+            while (j >= 0 && costs[j] > cost) {
+                ordered[j + 1] = ordered[j];
+                costs[j + 1] = costs[j];
+                j--;
+            }
+            ordered[j + 1] = entry;
+            costs[j + 1] = cost;
+        }
+
+        float limit = threshold;
+        double clean = 1;
+        List<String> hits = new ArrayList<>();
+        for (Entry entry : ordered) {
+            if (Thread.currentThread()
+                .isInterrupted()) {
+                break;
+            }
+            long start = System.nanoTime();
+            float score;
+            try {
+                score = Math.max(0, Math.min(1, entry.rule.check()));
+            } catch (RuntimeException e) {
+                score = 0;
+            }
+            entry.record(System.nanoTime() - start, score > 0);
+            if (score > 0) {
+                hits.add(entry.rule.getName());
+                clean *= 1 - score;
+                if (1 - clean >= limit) {
+                    break;
+                }
+            }
+        }
+        return new Verdict((float) (1 - clean), limit, hits);
+    }
+
+    /**
+     * @return Timing and hit statistics of every rule, in the order they were added.
+     */
+    public List<Stats> getStats() {
+        Entry[] current = entries;
+        List<Stats> stats = new ArrayList<>(current.length);
+        for (Entry entry : current) {
+            stats.add(entry.snapshot());
+        }
+        return stats;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Inner classes
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Result of one evaluation.
+     */
+    public static final class Verdict {
+        private final float score;
+        private final boolean rooted;
+        private final List<String> hits;
+
+        private Verdict(float score, float threshold, List<String> hits) {
+            this.score = score;
+            this.rooted = score >= threshold;
+            this.hits = Collections.unmodifiableList(hits);
+        }
+
+        public boolean isRooted() {
+            return rooted;
+        }
+
+        /**
+         * @return Combined score between 0 and 1.
+         */
+        public float getScore() {
+            return score;
+        }
+
+        /**
+         * @return Names of the rules that found evidence.
+         */
+        public List<String> getHits() {
+            return hits;
+        }
+
+        @Override
+        public String toString() {
+            return "Verdict{rooted=" + rooted + ", score=" + score + ", hits=" + hits + "}";
+        }
+    }
+
+    /**
+     * What a rule has cost so far.
+     */
+    public static final class Stats {
+        private final String name;
+        private final long runs;
+        private final long hits;
+        private final long totalNanos;
+        private final long maxNanos;
+
+        Stats(String name, long runs, long hits, long totalNanos, long maxNanos) {
+            this.name = name;
+            this.runs = runs;
+            this.hits = hits;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getRunCount() {
+            return runs;
+        }
+
+        public long getHitCount() {
+            return hits;
+        }
+
+        /**
+         * @return Share of runs that found evidence, between 0 and 1.
+         */
+        public double getHitRate() {
+            return runs == 0 ? 0 : (double) hits / runs;
+        }
+
+        public long getAverageMicros() {
+            return runs == 0 ? 0 : totalNanos / runs / NANOS_PER_MICRO;
+        }
+
+        public long getMaxMicros() {
+            return maxNanos / NANOS_PER_MICRO;
+        }
+
+        long getTotalNanos() {
+            return totalNanos;
+        }
+
+        long getMaxNanos() {
+            return maxNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: runs=%d hits=%d avg=%dus max=%dus", name, runs, hits,
+                getAverageMicros(), getMaxMicros());
+        }
+    }
+
+    private static final class Entry {
+        private final RootRule rule;
+        private long runs;
+        private long hits;
+        private long totalNanos;
+        private long maxNanos;
+
+        private Entry(RootRule rule) {
+            this.rule = rule;
+        }
+
+        private synchronized void record(long nanos, boolean hit) {
+            runs++;
+            if (hit) {
+                hits++;
+            }
+            totalNanos += nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+        }
+
+        /**
+         * @return Expected nanoseconds spent per hit. The hit rate starts at 1/2 and moves
+         * towards the measured rate as runs accumulate.
+         */
+        private synchronized void add(Stats stats) {
+            runs += stats.runs;
+            hits += stats.hits;
+            totalNanos += stats.totalNanos;
+            maxNanos = Math.max(maxNanos, stats.maxNanos);
+        }
+
+        private synchronized double costPerHit() {
+            double cost = runs > 0 ? (double) totalNanos / runs :
+                rule.getEstimatedCostMicros() * NANOS_PER_MICRO;
+            double hitRate = (hits + 1.0) / (runs + 2.0);
+            return cost / hitRate;
+        }
+
+        private synchronized Stats snapshot() {
+            return new Stats(rule.getName(), runs, hits, totalNanos, maxNanos);
+        }
+    }
+}
@@ -0,0 +1,289 @@
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.os.Build;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Built-in {@link RootRule}s. {@link RootUtil} registers all of them except
+ * {@link #rootManagerPackages(Context)}, which needs a context.
+ */
+public class RootRules {
+    // ---------------------------------------------------------------------------------------------
+    // Constants
+    // ---------------------------------------------------------------------------------------------
+    private static final String SU = "su";
+    /**
+     * Directories su is installed to besides those in PATH.
+     */
+    private static final String[] SU_DIRECTORIES =
+        {"/sbin", "/system/bin", "/system/xbin", "/data/local/xbin", "/data/local/bin",
+            "/system/sd/xbin", "/system/bin/failsafe", "/data/local", "/su/bin"};
+    private static final String SUPERUSER_APK = "/system/app/Superuser.apk";
+    private static final String MOUNTS = "/proc/mounts";
+    /**
+     * Mount points that are read-only on a stock device. "/" counts only when it is the system
+     * image, not the writable rootfs of older devices.
+     */
+    private static final String[] READ_ONLY_MOUNTS = {"/system", "/vendor", "/"};
+    private static final String ROOTFS = "rootfs";
+    private static final String[] ROOT_MANAGER_PACKAGES =
+        {"com.topjohnwu.magisk", "eu.chainfire.supersu", "com.noshufou.android.su",
+            "com.noshufou.android.su.elite", "com.koushikdutta.superuser",
+            "com.thirdparty.superuser", "com.yellowes.su", "me.weishu.kernelsu"};
+
+    // ---------------------------------------------------------------------------------------------
+    // Public methods
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * @return Rule that finds builds signed with test keys.
+     */
+    public static RootRule buildTags() {
+        return new Rule("build-tags", 1, 0.6f) {
+            @Override
+            boolean matches() {
+                String buildTags = android.os.Build.TAGS;
+                return buildTags != null && buildTags.contains("test-keys");
+            }
+        };
+    }
+
+    /**
+     * @return Rule that finds the Superuser app in the system partition.
+     */
+    public static RootRule superuserApk() {
+        return new Rule("superuser-apk", 20, 0.9f) {
+            @Override
+            boolean matches() {
+                return new File(SUPERUSER_APK).exists();
+            }
+        };
+    }
+
+    /**
+     * @return Rule that looks for an executable su in every PATH directory and the usual install
+     * locations, like "which su" but without starting a process.
+     */
+    public static RootRule suBinary() {
+        return new Rule("su-binary", 200, 1f) {
+            @Override
+            boolean matches() {
+                return checkForSuBinary();
+            }
+        };
+    }
+
+    /**
+     * @return Rule that finds mounts made by Magisk.
+     */
+    public static RootRule magiskMount() {
+        return new Rule("magisk-mount", 500, 0.9f) {
+            @Override
+            boolean matches() {
+                return checkMounts(true);
+            }
+        };
+    }
+
+    /**
+     * Engineering and custom builds mount system partitions read-write too, so this rule scores
+     * below the default threshold and only counts together with other evidence.
+     *
+     * @return Rule that finds system partitions mounted read-write.
+     */
+    public static RootRule readWriteSystemMount() {
+        return new Rule("rw-system-mount", 500, 0.3f) {
+            @Override
+            boolean matches() {
+                return checkMounts(false);
+            }
+        };
+    }
+
+    /**
+     * From Android 11 on the packages must be listed in the "queries" element of the manifest,
+     * otherwise they are never found.
+     *
+     * @param context Any context. Only the application context is kept.
+     * @return Rule that finds installed root manager apps, e.g. Magisk or SuperSU.
+     */
+    public static RootRule rootManagerPackages(Context context) {
+        final PackageManager packageManager = context.getApplicationContext()
+            .getPackageManager();
+        return new Rule("root-manager-packages", 2000, 0.8f) {
+            @Override
+            boolean matches() {
+                for (String packageName : ROOT_MANAGER_PACKAGES) {
+                    if (Thread.currentThread()
+                        .isInterrupted()) {
+                        return false;
+                    }
+                    try {
+                        packageManager.getPackageInfo(packageName, 0);
+                        return true;
+                    } catch (PackageManager.NameNotFoundException e) {
+                        // Not installed
+                    }
+                }
+                return false;
+            }
+        };
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Private methods
+    // ---------------------------------------------------------------------------------------------
+    private static boolean checkForSuBinary() {
+        Set<String> directories = new LinkedHashSet<>();
+        String path = System.getenv("PATH");
+        if (path != null) {
+            for (String directory : path.split(File.pathSeparator)) {
+                if (!directory.isEmpty()) {
+                    directories.add(trimTrailingSeparator(directory));
+                }
+            }
+        }
+        for (String directory : SU_DIRECTORIES) {
+            directories.add(directory);
+        }
+
+        for (String directory : directories) {
+            if (isExecutableFile(directory + File.separator + SU)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Any execute bit counts, not only one that applies to the app: su is often executable by
+     * root or the shell group only. A file that exists but whose mode can't be read counts too,
+     * as does any existing file before Lollipop, where there is no stat.
+     */
+    private static boolean isExecutableFile(String file) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            return new File(file).exists();
+        }
+        return hasExecuteBit(file);
+    }
+
+    /**
+     * Reads existence, type and permissions with a single stat.
+     */
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private static boolean hasExecuteBit(String file) {
+        try {
+            int mode = Os.stat(file).st_mode;
+            return OsConstants.S_ISREG(mode) &&
+                (mode & (OsConstants.S_IXUSR | OsConstants.S_IXGRP | OsConstants.S_IXOTH)) != 0;
+        } catch (ErrnoException e) {
+            // SELinux may deny the stat while the file is still visible
+            return e.errno != OsConstants.ENOENT && e.errno != OsConstants.ENOTDIR &&
+                new File(file).exists();
+        }
+    }
+
+    private static String trimTrailingSeparator(String directory) {
+        if (directory.length() > 1 && directory.endsWith(File.separator)) {
+            return directory.substring(0, directory.length() - 1);
+        }
+        return directory;
+    }
+
+    /**
+     * Lines look like "/dev/block/dm-0 /system ext4 ro,seclabel,relatime 0 0".
+     *
+     * @param magisk Whether to look for Magisk mounts instead of read-write system partitions.
+     */
+    private static boolean checkMounts(boolean magisk) {
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new FileReader(MOUNTS));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(" ");
+                if (fields.length < 4) {
+                    continue;
+                }
+                if (magisk) {
+                    if (fields[0].contains("magisk")) {
+                        return true;
+                    }
+                    continue;
+                }
+                for (String mountPoint : READ_ONLY_MOUNTS) {
+                    if (mountPoint.equals(fields[1]) && !ROOTFS.equals(fields[2]) &&
+                        isReadWrite(fields[3])) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        } catch (IOException e) {
+            return false;
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    // Nothing left to do
+                }
+            }
+        }
+    }
+
+    private static boolean isReadWrite(String options) {
+        for (String option : options.split(",")) {
+            if ("rw".equals(option)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Inner classes
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * A rule that either finds its evidence or not.
+     */
+    private abstract static class Rule implements RootRule {
+        private final String name;
+        private final long estimatedCostMicros;
+        private final float score;
+
+        private Rule(String name, long estimatedCostMicros, float score) {
+            this.name = name;
+            this.estimatedCostMicros = estimatedCostMicros;
+            this.score = score;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public long getEstimatedCostMicros() {
+            return estimatedCostMicros;
+        }
+
+        @Override
+        public float check() {
+            return matches() ? score : 0;
+        }
+
+        abstract boolean matches();
+    }
+}
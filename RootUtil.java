@@ -1,59 +1,255 @@
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.InputStreamReader;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
+ * The checks are {@link RootRule}s run by a {@link RootRuleEngine} on a background thread,
+ * cheapest per hit first, until one of them finds root. The verdict is kept for the life of the
+ * process. More rules, e.g. {@link RootRules#rootManagerPackages}, can be added with
+ * {@link #addRule(RootRule)} before the first check.
+ * <p>
+ * After {@link #enableVerdictCache(Context)} the verdict is also stored for the current boot, so
+ * later launches answer from a small file and only re-check in the background. The statistics of
+ * the rules are stored as well, so the cost ordering learns across launches even though each
+ * process runs the checks only once.
+ *
  * @author Kevin Kowalewski
  */
 public class RootUtil {
+    // ---------------------------------------------------------------------------------------------
+    // Constants
+    // ---------------------------------------------------------------------------------------------
+    private static final long DEFAULT_TIMEOUT_MILLIS = 2000;
+
+    // ---------------------------------------------------------------------------------------------
+    // Fields
+    // ---------------------------------------------------------------------------------------------
+    private static final Object lock = new Object();
+    private static final ThreadFactory threadFactory = new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "RootUtil");
+            thread.setDaemon(true);
+            return thread;
+        }
+    };
+    private static final ExecutorService executor = Executors.newCachedThreadPool(threadFactory);
+    /**
+     * Runs the store's file I/O in order, so statistics are restored before they are written.
+     */
+    private static final ExecutorService storeExecutor =
+        Executors.newSingleThreadExecutor(threadFactory);
+    private static final RootRuleEngine engine = createEngine();
+    private static volatile RootRuleEngine.Verdict verdict;
+    private static volatile RootVerdictStore store;
+    private static boolean reverifying;
+
     // ---------------------------------------------------------------------------------------------
     // Public methods
     // ---------------------------------------------------------------------------------------------
 
     /**
-     * Method that check root access of the device.
+     * Method that check root access of the device. Blocks until the verdict is known or 2
+     * seconds passed; prefer {@link #isDeviceRootedAsync(Callback)} on the main thread.
      *
      * @return true or false.
      */
     public static boolean isDeviceRooted() {
-        return checkFromBuildInfo() || checkForSuperUserApk() || canExecuteCommand();
+        return isDeviceRooted(DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Method that check root access of the device. A verdict found in time is kept for the life
+     * of the process, so later calls return at once.
+     *
+     * @param timeoutMillis How long to wait for the checks. Checks that didn't finish in time
+     *                      count as negative.
+     * @return true or false.
+     */
+    public static boolean isDeviceRooted(long timeoutMillis) {
+        RootRuleEngine.Verdict known = verdict;
+        if (known != null) {
+            return known.isRooted();
+        }
+        RootVerdictStore currentStore = store;
+        Boolean stored = currentStore != null ? currentStore.read() : null;
+        if (stored != null) {
+            reverifyInBackground();
+            return stored;
+        }
+        synchronized (lock) {
+            known = verdict;
+            if (known != null) {
+                return known.isRooted();
+            }
+            return runChecks(timeoutMillis);
+        }
+    }
+
+    /**
+     * Method that check root access of the device without blocking the calling thread.
+     *
+     * @param callback Receives the verdict on the main thread.
+     */
+    public static void isDeviceRootedAsync(final Callback callback) {
+        final Handler handler = new Handler(Looper.getMainLooper());
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final boolean rooted = isDeviceRooted();
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onResult(rooted);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Stores verdicts in the app's files, keyed by boot session and build fingerprint. A stored
+     * verdict of the current boot is returned at once, while the checks run again in the
+     * background and replace it. The rule statistics of earlier launches are read in the
+     * background as well.
+     *
+     * @param context Any context. Only the application context is kept.
+     */
+    public static synchronized void enableVerdictCache(Context context) {
+        if (store != null) {
+            return;
+        }
+        final RootVerdictStore verdictStore =
+            new RootVerdictStore(context.getApplicationContext());
+        store = verdictStore;
+        storeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                engine.restoreStats(verdictStore.readStats());
+            }
+        });
+    }
+
+    /**
+     * @return Score and matching rules of the kept verdict, or null until the checks completed
+     * once in this process. A verdict answered from the verdict cache has no score.
+     */
+    public static RootRuleEngine.Verdict getVerdict() {
+        return verdict;
+    }
+
+    /**
+     * Adds a check to every later evaluation. A verdict that is already known is not changed.
+     *
+     * @param rule E.g. {@link RootRules#rootManagerPackages}.
+     */
+    public static void addRule(RootRule rule) {
+        engine.addRule(rule);
+    }
+
+    /**
+     * @return Timing and hit statistics of every check.
+     */
+    public static List<RootRuleEngine.Stats> getRuleStats() {
+        return engine.getStats();
     }
 
     // ---------------------------------------------------------------------------------------------
     // Private methods
     // ---------------------------------------------------------------------------------------------
-    private static boolean checkFromBuildInfo() {
-        String buildTags = android.os.Build.TAGS;
-        return buildTags != null && buildTags.contains("test-keys");
+    private static RootRuleEngine createEngine() {
+        RootRuleEngine ruleEngine = new RootRuleEngine();
+        ruleEngine.addRule(RootRules.buildTags());
+        ruleEngine.addRule(RootRules.superuserApk());
+        ruleEngine.addRule(RootRules.suBinary());
+        ruleEngine.addRule(RootRules.magiskMount());
+        ruleEngine.addRule(RootRules.readWriteSystemMount());
+        return ruleEngine;
     }
 
-    private static boolean checkForSuperUserApk() {
-        String[] paths =
-            {"/system/app/Superuser.apk", "/sbin/su", "/system/bin/su", "/system/xbin/su",
-                "/data/local/xbin/su", "/data/local/bin/su", "/system/sd/xbin/su",
-                "/system/bin/failsafe/su", "/data/local/su"};
-        for (String path : paths) {
-            if (new File(path).exists()) {
-                return true;
-            }
+    private static synchronized void reverifyInBackground() {
+        if (reverifying) {
+            return;
         }
-        return false;
+        reverifying = true;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (lock) {
+                    if (verdict == null) {
+                        runChecks(DEFAULT_TIMEOUT_MILLIS);
+                    }
+                }
+            }
+        });
     }
 
-    private static boolean canExecuteCommand() {
-        Process process = null;
+    /**
+     * Writes on a separate task, so neither the caller nor the timeout waits on the file I/O.
+     */
+    private static void persist(final RootVerdictStore verdictStore, final boolean rooted) {
+        storeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                verdictStore.write(rooted);
+                verdictStore.writeStats(engine.getStats());
+            }
+        });
+    }
+
+    private static boolean runChecks(long timeoutMillis) {
+        Future<RootRuleEngine.Verdict> future =
+            executor.submit(new Callable<RootRuleEngine.Verdict>() {
+                @Override
+                public RootRuleEngine.Verdict call() {
+                    RootRuleEngine.Verdict result = engine.evaluate();
+                    RootVerdictStore currentStore = store;
+                    if (currentStore != null && !Thread.currentThread()
+                        .isInterrupted()) {
+                        persist(currentStore, result.isRooted());
+                    }
+                    return result;
+                }
+            });
         try {
-            process = Runtime.getRuntime()
-                .exec(new String[]{"/system/xbin/which", "su"});
-            BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream()));
-            return in.readLine() != null;
-        } catch (Throwable t) {
+            RootRuleEngine.Verdict result = future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            verdict = result;
+            return result.isRooted();
+        } catch (TimeoutException e) {
+            // A timed out run is not final, the next call checks again
+            future.cancel(true);
+            return false;
+        } catch (ExecutionException e) {
+            return false;
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread()
+                .interrupt();
             return false;
-        } finally {
-            if (process != null) {
-                process.destroy();
-            }
         }
     }
+
+    // ---------------------------------------------------------------------------------------------
+    // Inner classes
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Receives the result of {@link #isDeviceRootedAsync(Callback)}.
+     */
+    public interface Callback {
+        /**
+         * @param rooted Whether any check found root access.
+         */
+        void onResult(boolean rooted);
+    }
 }
@@ -0,0 +1,228 @@
+import android.content.Context;
+import android.os.Build;
+import android.os.SystemClock;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the root verdict in a small file together with the boot session and the build
+ * fingerprint. Root state can't change without a reboot or an OTA, so a verdict written in the
+ * same boot of the same build is still valid, and a cold start reads it instead of checking
+ * again.
+ * <p>
+ * The file holds one value per line: format version, boot id, build fingerprint and verdict.
+ * <p>
+ * The timing and hit statistics of the rules are kept in a second file across boots, so the cost
+ * ordering of {@link RootRuleEngine} builds on the measurements of earlier launches. It holds the
+ * format version, then one rule per line: name, runs, hits, total and max nanoseconds.
+ */
+class RootVerdictStore {
+    // ---------------------------------------------------------------------------------------------
+    // Constants
+    // ---------------------------------------------------------------------------------------------
+    private static final String FILE_NAME = "root_verdict";
+    private static final String STATS_FILE_NAME = "root_rule_stats";
+    private static final String SEPARATOR = "\t";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String VERSION = "1";
+    private static final String BOOT_ID = "/proc/sys/kernel/random/boot_id";
+    /**
+     * The boot time derived from the clocks drifts by a few milliseconds between calls, so it is
+     * rounded to this.
+     */
+    private static final long BOOT_TIME_ROUNDING_MILLIS = 10000;
+
+    // ---------------------------------------------------------------------------------------------
+    // Fields
+    // ---------------------------------------------------------------------------------------------
+    private final File file;
+    private final File statsFile;
+    private String bootId;
+    private boolean loaded;
+    private Boolean rooted;
+
+    // ---------------------------------------------------------------------------------------------
+    // Constructors
+    // ---------------------------------------------------------------------------------------------
+    RootVerdictStore(Context context) {
+        file = new File(context.getFilesDir(), FILE_NAME);
+        statsFile = new File(context.getFilesDir(), STATS_FILE_NAME);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Package methods
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Reads the file once; later calls return the same value.
+     *
+     * @return The stored verdict, or null if there is none for this boot and build.
+     */
+    synchronized Boolean read() {
+        if (loaded) {
+            return rooted;
+        }
+        loaded = true;
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+            String version = reader.readLine();
+            String storedBootId = reader.readLine();
+            String fingerprint = reader.readLine();
+            String verdict = reader.readLine();
+            if (VERSION.equals(version) && getBootId().equals(storedBootId) &&
+                String.valueOf(Build.FINGERPRINT)
+                    .equals(fingerprint) && verdict != null) {
+                rooted = Boolean.valueOf(verdict);
+            }
+        } catch (IOException e) {
+            // No verdict stored yet
+        } finally {
+            close(reader);
+        }
+        return rooted;
+    }
+
+    /**
+     * Replaces the stored verdict. Does file I/O, so call it on a background thread.
+     *
+     * @param rooted The verdict for this boot and build.
+     */
+    synchronized void write(boolean rooted) {
+        this.rooted = rooted;
+        loaded = true;
+        replace(file, VERSION + "\n" + getBootId() + "\n" + Build.FINGERPRINT + "\n" + rooted +
+            "\n");
+    }
+
+    /**
+     * Does file I/O, so call it on a background thread.
+     *
+     * @return Statistics written by earlier processes, empty if there are none.
+     */
+    synchronized List<RootRuleEngine.Stats> readStats() {
+        List<RootRuleEngine.Stats> stats = new ArrayList<>();
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(statsFile), "UTF-8"));
+            if (!VERSION.equals(reader.readLine())) {
+                return stats;
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(SEPARATOR);
+                if (fields.length == 5) {
+                    stats.add(new RootRuleEngine.Stats(fields[0], Long.parseLong(fields[1]),
+                        Long.parseLong(fields[2]), Long.parseLong(fields[3]),
+                        Long.parseLong(fields[4])));
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            // No statistics stored yet, or a damaged file that the next write replaces
+            stats.clear();
+        } finally {
+            close(reader);
+        }
+        return stats;
+    }
+
+    /**
+     * Replaces the stored statistics. Does file I/O, so call it on a background thread.
+     *
+     * @param stats Statistics of all rules, including those restored from earlier processes.
+     */
+    synchronized void writeStats(List<RootRuleEngine.Stats> stats) {
+        StringBuilder builder = new StringBuilder(VERSION).append('\n');
+        for (RootRuleEngine.Stats rule : stats) {
+            builder.append(rule.getName())
+                .append(SEPARATOR)
+                .append(rule.getRunCount())
+                .append(SEPARATOR)
+                .append(rule.getHitCount())
+                .append(SEPARATOR)
+                .append(rule.getTotalNanos())
+                .append(SEPARATOR)
+                .append(rule.getMaxNanos())
+                .append('\n');
+        }
+        replace(statsFile, builder.toString());
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Private methods
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * @return The kernel's random id of this boot, or the rounded boot time where the id can't be
+     * read.
+     */
+    private String getBootId() {
+        if (bootId != null) {
+            return bootId;
+        }
+        Reader reader = null;
+        try {
+            BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(BOOT_ID), "UTF-8"));
+            reader = bufferedReader;
+            String line = bufferedReader.readLine();
+            if (line != null && !line.trim()
+                .isEmpty()) {
+                bootId = line.trim();
+            }
+        } catch (IOException | SecurityException e) {
+            // Falls back to the boot time
+        } finally {
+            close(reader);
+        }
+        if (bootId == null) {
+            long bootTime = System.currentTimeMillis() - SystemClock.elapsedRealtime();
+            long rounded = (bootTime + BOOT_TIME_ROUNDING_MILLIS / 2) / BOOT_TIME_ROUNDING_MILLIS;
+            bootId = "boot-time-" + rounded;
+        }
+        return bootId;
+    }
+
+    /**
+     * Writes a temporary file and renames it, so readers never see a partially written file.
+     */
+    private static void replace(File target, String content) {
+        File temp = new File(target.getPath() + TEMP_SUFFIX);
+        Writer writer = null;
+        try {
+            writer = new OutputStreamWriter(new FileOutputStream(temp), "UTF-8");
+            writer.write(content);
+            writer.close();
+            writer = null;
+            if (!temp.renameTo(target)) {
+                temp.delete();
+            }
+        } catch (IOException e) {
+            temp.delete();
+        } finally {
+            close(writer);
+        }
+    }
+
+    private static void close(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // Nothing left to do
+            }
+        }
+    }
+}
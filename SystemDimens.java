@@ -0,0 +1,113 @@
+import android.content.ComponentCallbacks;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.os.Process;
+import android.util.Log;
+
+/**
+ * Registry of framework dimensions like the status bar height. The resource ids are looked up by
+ * name only once, and the pixel values are cached until the configuration changes, so every
+ * other lookup is an array read.
+ */
+public class SystemDimens {
+    // ---------------------------------------------------------------------------------------------
+    // Constants
+    // ---------------------------------------------------------------------------------------------
+    private static final String TAG = SystemDimens.class.getSimpleName();
+    private static final String WARM_UP_THREAD_NAME = "SystemDimens-warmup";
+
+    public static final int STATUS_BAR_HEIGHT = 0;
+    public static final int NAVIGATION_BAR_HEIGHT = 1;
+    public static final int NAVIGATION_BAR_HEIGHT_LANDSCAPE = 2;
+    public static final int NAVIGATION_BAR_WIDTH = 3;
+
+    private static final String[] NAMES =
+        {"status_bar_height", "navigation_bar_height", "navigation_bar_height_landscape",
+            "navigation_bar_width"};
+
+    // ---------------------------------------------------------------------------------------------
+    // Fields
+    // ---------------------------------------------------------------------------------------------
+    private static int[] ids;
+    /**
+     * Pixel values for the current configuration, or null after a configuration change.
+     */
+    private static volatile int[] values;
+
+    // ---------------------------------------------------------------------------------------------
+    // Public methods
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Method that returns a framework dimension in pixels.
+     *
+     * @param context Any context. Only the application context is kept.
+     * @param dimen   One of {@link #STATUS_BAR_HEIGHT}, {@link #NAVIGATION_BAR_HEIGHT},
+     *                {@link #NAVIGATION_BAR_HEIGHT_LANDSCAPE} or {@link #NAVIGATION_BAR_WIDTH}.
+     * @return Dimension in pixels, or 0 if the framework doesn't define it.
+     */
+    public static int get(Context context, int dimen) {
+        int[] current = values;
+        if (current == null) {
+            current = resolve(context);
+        }
+        return current[dimen];
+    }
+
+    /**
+     * Method that resolves all dimensions on a background thread, so the first lookup on the main
+     * thread is already an array read. Call it early, e.g. from Application.onCreate().
+     *
+     * @param context Any context. Only the application context is kept.
+     */
+    public static void warmUp(Context context) {
+        final Context appContext = context.getApplicationContext();
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                resolve(appContext);
+            }
+        }, WARM_UP_THREAD_NAME);
+        thread.start();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Private methods
+    // ---------------------------------------------------------------------------------------------
+    private static synchronized int[] resolve(Context context) {
+        int[] current = values;
+        if (current != null) {
+            return current;
+        }
+        Context appContext = context.getApplicationContext();
+        Resources resources = appContext.getResources();
+        if (ids == null) {
+            ids = new int[NAMES.length];
+            for (int i = 0; i < NAMES.length; i++) {
+                ids[i] = resources.getIdentifier(NAMES[i], "dimen", "android");
+            }
+            appContext.registerComponentCallbacks(new ComponentCallbacks() {
+                @Override
+                public void onConfigurationChanged(Configuration newConfig) {
+                    values = null;
+                }
+
+                @Override
+                public void onLowMemory() {
+                }
+            });
+        }
+
+        current = new int[NAMES.length];
+        for (int i = 0; i < NAMES.length; i++) {
+            if (ids[i] > 0) {
+                current[i] = resources.getDimensionPixelSize(ids[i]);
+            }
+            Log.i(TAG, NAMES[i] + " = " + current[i]);
+        }
+        values = current;
+        return current;
+    }
+}
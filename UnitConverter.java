@@ -0,0 +1,178 @@
+import android.content.Context;
+
+/**
+ * Converts dp and sp to pixels through lookup tables built for the current density and font
+ * scale. The tables are rebuilt whenever {@link DisplayUtils} replaces its snapshot of the default
+ * display, so values follow display size and font size settings. Rounding matches
+ * {@link android.util.TypedValue}: to the nearest pixel, and never 0 for a non-zero value.
+ */
+public class UnitConverter {
+    // ---------------------------------------------------------------------------------------------
+    // Constants
+    // ---------------------------------------------------------------------------------------------
+    private static final int MAX_TABLE_DP = 512;
+    private static final int MAX_TABLE_SP = 128;
+
+    // ---------------------------------------------------------------------------------------------
+    // Fields
+    // ---------------------------------------------------------------------------------------------
+    private static volatile Tables tables;
+
+    // ---------------------------------------------------------------------------------------------
+    // Public methods
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * @param context Any context. Only the application context is kept.
+     * @param dp      Value in dp.
+     * @return Value in pixels.
+     */
+    public static int dpToPx(Context context, int dp) {
+        Tables current = getTables(context);
+        if (dp >= 0 && dp <= MAX_TABLE_DP) {
+            return current.dpToPx[dp];
+        }
+        return toPx(dp, current.density);
+    }
+
+    /**
+     * @param context Any context. Only the application context is kept.
+     * @param dp      Value in dp.
+     * @return Value in pixels.
+     */
+    public static int dpToPx(Context context, float dp) {
+        return toPx(dp, getTables(context).density);
+    }
+
+    /**
+     * @param context Any context. Only the application context is kept.
+     * @param sp      Value in sp.
+     * @return Value in pixels, including the user's font scale.
+     */
+    public static int spToPx(Context context, int sp) {
+        Tables current = getTables(context);
+        if (sp >= 0 && sp <= MAX_TABLE_SP) {
+            return current.spToPx[sp];
+        }
+        return toPx(sp, current.scaledDensity);
+    }
+
+    /**
+     * @param context Any context. Only the application context is kept.
+     * @param sp      Value in sp.
+     * @return Value in pixels, including the user's font scale.
+     */
+    public static int spToPx(Context context, float sp) {
+        return toPx(sp, getTables(context).scaledDensity);
+    }
+
+    /**
+     * Converts many values at once.
+     *
+     * @param context Any context. Only the application context is kept.
+     * @param dp      Values in dp.
+     * @param px      Receives the values in pixels. Must be at least as long as dp.
+     */
+    public static void dpToPx(Context context, int[] dp, int[] px) {
+        Tables current = getTables(context);
+        int[] table = current.dpToPx;
+        for (int i = 0; i < dp.length; i++) {
+            int value = dp[i];
+            px[i] = value >= 0 && value <= MAX_TABLE_DP ? table[value] :
+                toPx(value, current.density);
+        }
+    }
+
+    /**
+     * Converts many values at once.
+     *
+     * @param context Any context. Only the application context is kept.
+     * @param dp      Values in dp.
+     * @param px      Receives the values in pixels. Must be at least as long as dp.
+     */
+    public static void dpToPx(Context context, float[] dp, int[] px) {
+        float density = getTables(context).density;
+        for (int i = 0; i < dp.length; i++) {
+            px[i] = toPx(dp[i], density);
+        }
+    }
+
+    /**
+     * Converts many values at once.
+     *
+     * @param context Any context. Only the application context is kept.
+     * @param sp      Values in sp.
+     * @param px      Receives the values in pixels. Must be at least as long as sp.
+     */
+    public static void spToPx(Context context, int[] sp, int[] px) {
+        Tables current = getTables(context);
+        int[] table = current.spToPx;
+        for (int i = 0; i < sp.length; i++) {
+            int value = sp[i];
+            px[i] = value >= 0 && value <= MAX_TABLE_SP ? table[value] :
+                toPx(value, current.scaledDensity);
+        }
+    }
+
+    /**
+     * Converts many values at once.
+     *
+     * @param context Any context. Only the application context is kept.
+     * @param sp      Values in sp.
+     * @param px      Receives the values in pixels. Must be at least as long as sp.
+     */
+    public static void spToPx(Context context, float[] sp, int[] px) {
+        float scaledDensity = getTables(context).scaledDensity;
+        for (int i = 0; i < sp.length; i++) {
+            px[i] = toPx(sp[i], scaledDensity);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Private methods
+    // ---------------------------------------------------------------------------------------------
+    private static int toPx(float value, float scale) {
+        float px = value * scale;
+        int result = (int) (px >= 0 ? px + 0.5f : px - 0.5f);
+        if (result != 0) {
+            return result;
+        }
+        if (value == 0) {
+            return 0;
+        }
+        return value > 0 ? 1 : -1;
+    }
+
+    private static Tables getTables(Context context) {
+        DisplaySnapshot display = DisplayUtils.getDefaultDisplaySnapshot(context);
+        Tables current = tables;
+        if (current == null || current.display != display) {
+            current = new Tables(display);
+            tables = current;
+        }
+        return current;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Inner classes
+    // ---------------------------------------------------------------------------------------------
+    private static final class Tables {
+        private final DisplaySnapshot display;
+        private final float density;
+        private final float scaledDensity;
+        private final int[] dpToPx = new int[MAX_TABLE_DP + 1];
+        private final int[] spToPx = new int[MAX_TABLE_SP + 1];
+
+        private Tables(DisplaySnapshot display) {
+            this.display = display;
+            density = display.getDensity();
+            scaledDensity = display.getScaledDensity();
+            for (int i = 0; i <= MAX_TABLE_DP; i++) {
+                dpToPx[i] = toPx(i, density);
+            }
+            for (int i = 0; i <= MAX_TABLE_SP; i++) {
+                spToPx[i] = toPx(i, scaledDensity);
+            }
+        }
+    }
+}
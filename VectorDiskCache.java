@@ -0,0 +1,212 @@
+package com.night_bg.utils;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.graphics.Bitmap;
+import android.os.Process;
+import android.support.v4.content.pm.PackageInfoCompat;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stores raw pixels of rasterized vectors in the cache directory, so a cold start maps the file
+ * and copies it into a bitmap instead of inflating and drawing the drawable. File names contain
+ * the app version code, and files of other versions are deleted when the cache opens.
+ * <p>
+ * A file holds the width and height as two ints followed by the pixels in the layout of
+ * {@link Bitmap#copyPixelsToBuffer}. Reads and the copy of the pixels to write happen on the
+ * calling thread, file writes on a background thread.
+ */
+class VectorDiskCache {
+    // ---------------------------------------------------------------------------------------------
+    // Constants
+    // ---------------------------------------------------------------------------------------------
+    private static final String DIRECTORY = "vector_cache";
+    private static final String EXTENSION = ".px";
+    private static final String TEMP_EXTENSION = ".tmp";
+    private static final int HEADER_BYTES = 8;
+    private static final long THREAD_KEEP_ALIVE_SECONDS = 5;
+
+    // ---------------------------------------------------------------------------------------------
+    // Fields
+    // ---------------------------------------------------------------------------------------------
+    private final File directory;
+    /**
+     * Start of every file name of this app version.
+     */
+    private final String prefix;
+    private final ThreadPoolExecutor writer;
+
+    // ---------------------------------------------------------------------------------------------
+    // Constructors
+    // ---------------------------------------------------------------------------------------------
+    VectorDiskCache(Context context) {
+        directory = new File(context.getCacheDir(), DIRECTORY);
+        prefix = "v" + getVersionCode(context) + "_";
+        writer = new ThreadPoolExecutor(1, 1, THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    Thread thread = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            runnable.run();
+                        }
+                    }, "VectorDiskCache");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        writer.allowCoreThreadTimeOut(true);
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                removeStaleFiles();
+            }
+        });
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Package methods
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * @param name   Unique name of the entry, without version.
+     * @param config Config of the stored pixels.
+     * @param pool   Pool the bitmap is taken from.
+     * @return The stored bitmap, or null if there is no valid entry.
+     */
+    Bitmap get(String name, Bitmap.Config config, BitmapPool pool) {
+        File file = new File(directory, prefix + name + EXTENSION);
+        if (!file.isFile()) {
+            return null;
+        }
+        RandomAccessFile input = null;
+        try {
+            input = new RandomAccessFile(file, "r");
+            FileChannel channel = input.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                channel.size());
+            if (buffer.remaining() < HEADER_BYTES) {
+                file.delete();
+                return null;
+            }
+            int width = buffer.getInt();
+            int height = buffer.getInt();
+            if (width <= 0 || height <= 0) {
+                file.delete();
+                return null;
+            }
+            Bitmap bitmap = pool.get(width, height, config);
+            if (buffer.remaining() != bitmap.getRowBytes() * height) {
+                pool.release(bitmap);
+                file.delete();
+                return null;
+            }
+            bitmap.copyPixelsFromBuffer(buffer);
+            return bitmap;
+        } catch (IOException e) {
+            // The drawable is rasterized instead
+            return null;
+        } finally {
+            close(input);
+        }
+    }
+
+    /**
+     * Copies the pixels and stores them in the background, so the bitmap may be reused as soon
+     * as this returns.
+     *
+     * @param name   Unique name of the entry, without version.
+     * @param bitmap Bitmap to store.
+     */
+    void put(final String name, Bitmap bitmap) {
+        if (bitmap.isRecycled()) {
+            return;
+        }
+        final ByteBuffer buffer =
+            ByteBuffer.allocate(HEADER_BYTES + bitmap.getRowBytes() * bitmap.getHeight());
+        buffer.putInt(bitmap.getWidth());
+        buffer.putInt(bitmap.getHeight());
+        bitmap.copyPixelsToBuffer(buffer);
+        buffer.flip();
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                write(name, buffer);
+            }
+        });
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Private methods
+    // ---------------------------------------------------------------------------------------------
+    private void write(String name, ByteBuffer buffer) {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            return;
+        }
+        File temp = new File(directory, prefix + name + TEMP_EXTENSION);
+        FileOutputStream output = null;
+        try {
+            output = new FileOutputStream(temp);
+            FileChannel channel = output.getChannel();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            output.close();
+            output = null;
+            // Readers never see a partially written file
+            if (!temp.renameTo(new File(directory, prefix + name + EXTENSION))) {
+                temp.delete();
+            }
+        } catch (IOException e) {
+            temp.delete();
+        } finally {
+            close(output);
+        }
+    }
+
+    private void removeStaleFiles() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String fileName = file.getName();
+            if (!fileName.startsWith(prefix) || fileName.endsWith(TEMP_EXTENSION)) {
+                file.delete();
+            }
+        }
+    }
+
+    private static long getVersionCode(Context context) {
+        try {
+            return PackageInfoCompat.getLongVersionCode(context.getPackageManager()
+                .getPackageInfo(context.getPackageName(), 0));
+        } catch (PackageManager.NameNotFoundException e) {
+            return 0;
+        }
+    }
+
+    private static void close(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // Nothing left to do
+            }
+        }
+    }
+}